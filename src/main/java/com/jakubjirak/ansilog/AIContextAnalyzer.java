@@ -51,16 +51,20 @@ public class AIContextAnalyzer {
     }
     
     public static AIContext analyzeForAI(@NotNull String logContent) {
+        return analyzeForAI(LogSnapshot.of(logContent));
+    }
+
+    public static AIContext analyzeForAI(@NotNull LogSnapshot log) {
         AIContext context = new AIContext();
+        // No copy if the snapshot was taken of a string
+        String logContent = log.getText().toString();
         
-        String[] lines = logContent.split("\n");
         int errorCount = 0;
-        
-        for (String line : lines) {
-            if (line.contains("ERROR") || line.contains("FATAL")) errorCount++;
+        for (int i = 0; i < log.getLineCount(); i++) {
+            if (log.contains(i, "ERROR") || log.contains(i, "FATAL")) errorCount++;
         }
         
-        context.errorRate = (double) errorCount / Math.max(lines.length, 1);
+        context.errorRate = (double) errorCount / Math.max(log.getLineCount(), 1);
         
         // Detect technologies
         detectTechnologies(logContent, context);
@@ -88,9 +92,10 @@ public class AIContextAnalyzer {
     
     private static void detectTechnologies(@NotNull String content, @NotNull AIContext context) {
         Set<String> foundTechs = new HashSet<>();
+        String lowerContent = content.toLowerCase();
         
         TECH_SIGNATURES.forEach((keyword, tech) -> {
-            if (content.toLowerCase().contains(keyword.toLowerCase())) {
+            if (lowerContent.contains(keyword.toLowerCase())) {
                 foundTechs.add(tech);
             }
         });
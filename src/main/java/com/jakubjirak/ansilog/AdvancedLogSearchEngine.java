@@ -52,6 +52,8 @@ public class AdvancedLogSearchEngine {
         Pattern mainPattern = compilePattern(query.text, query.regex, query.caseSensitive);
         if (mainPattern == null) return results;
         
+        // Matches run on the clean line; offsets are reported in the raw line
+        AnsiStripper stripper = new AnsiStripper(true);
         for (int i = 0; i < lines.length; i++) {
             String line = lines[i];
             
@@ -65,11 +67,11 @@ public class AdvancedLogSearchEngine {
                 continue;
             }
             
-            Matcher matcher = mainPattern.matcher(removeAnsiCodes(line));
+            Matcher matcher = mainPattern.matcher(stripper.strip(line, 0, line.length()));
             while (matcher.find()) {
                 SearchResult result = new SearchResult(
                     i + 1,
-                    matcher.start(),
+                    stripper.getOffsetMap().toRaw(matcher.start()),
                     line,
                     matcher.group()
                 );
@@ -170,6 +172,6 @@ public class AdvancedLogSearchEngine {
     }
     
     private static String removeAnsiCodes(String text) {
-        return text.replaceAll("(?:\u001B|\\u001B)\\[[0-9;]*m", "");
+        return AnsiStripper.strip(text);
     }
 }
@@ -35,7 +35,7 @@ public class AdvancedSearchFilterAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        e.getPresentation().setEnabled(editor != null && !editor.getDocument().getText().isEmpty());
+        e.getPresentation().setEnabled(editor != null && editor.getDocument().getTextLength() > 0);
     }
 
     private static class AdvancedSearchDialog extends DialogWrapper {
@@ -15,16 +15,15 @@ public class AnomalyDetectionAction extends AnAction {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
         if (editor == null) return;
         
-        String text = editor.getDocument().getText();
-        String[] lines = text.split("\n");
+        LogSnapshot log = LogSnapshot.of(editor.getDocument());
         
         StringBuilder analysis = new StringBuilder();
         analysis.append("ANOMALY_DETECTION_RESULTS:\n\n");
         
         // Detect sudden error spikes
-        int[] errorWindow = new int[Math.min(50, lines.length)];
+        int[] errorWindow = new int[Math.min(50, log.getLineCount())];
         for (int i = 0; i < errorWindow.length; i++) {
-            if (lines[i].toUpperCase().contains("ERROR")) {
+            if (log.getLine(i).toUpperCase().contains("ERROR")) {
                 errorWindow[i] = 1;
             }
         }
@@ -45,8 +44,9 @@ public class AnomalyDetectionAction extends AnAction {
         // Detect repeated errors
         Map<String, Integer> errorPatterns = new HashMap<>();
         Pattern errorPattern = Pattern.compile("ERROR[^\\n]*");
-        for (String line : lines) {
-            String clean = line.replaceAll("(?:\u001B|\\u001B)\\[[0-9;]*m", "");
+        AnsiStripper stripper = new AnsiStripper();
+        for (int i = 0; i < log.getLineCount(); i++) {
+            String clean = stripper.strip(log.getText(), log.getLineStart(i), log.getLineEnd(i)).toString();
             if (clean.contains("ERROR")) {
                 String key = clean.replaceAll("[0-9]+", "X").toLowerCase();
                 errorPatterns.put(key, errorPatterns.getOrDefault(key, 0) + 1);
@@ -71,7 +71,8 @@ public class AnomalyDetectionAction extends AnAction {
         analysis.append("3. TIME_GAP_ANALYSIS:\n");
         Pattern timePattern = Pattern.compile("(\\d{2}):(\\d{2}):(\\d{2})");
         List<Integer> timestamps = new ArrayList<>();
-        for (String line : lines) {
+        for (int i = 0; i < log.getLineCount(); i++) {
+            String line = log.getLine(i);
             java.util.regex.Matcher m = timePattern.matcher(line);
             if (m.find()) {
                 String time = m.group();
@@ -101,9 +102,10 @@ public class AnomalyDetectionAction extends AnAction {
         
         // Log level distribution anomaly
         analysis.append("4. SEVERITY_DISTRIBUTION:\n");
-        int total = lines.length;
+        int total = log.getLineCount();
         int errors = 0, warns = 0;
-        for (String line : lines) {
+        for (int i = 0; i < log.getLineCount(); i++) {
+            String line = log.getLine(i);
             if (line.contains("ERROR")) errors++;
             else if (line.contains("WARN")) warns++;
         }
@@ -130,6 +132,6 @@ public class AnomalyDetectionAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        e.getPresentation().setEnabled(editor != null && !editor.getDocument().getText().isEmpty());
+        e.getPresentation().setEnabled(editor != null && editor.getDocument().getTextLength() > 0);
     }
 }
@@ -15,7 +15,8 @@ public class AnomalyDetector {
         
         public Anomaly(int lineNumber, String line) {
             this.lineNumber = lineNumber;
-            this.line = line;
+            // Keep reports small when a line is megabytes long
+            this.line = LongLineGuard.abbreviate(line);
             this.relatedLines = new ArrayList<>();
         }
     }
@@ -35,29 +36,42 @@ public class AnomalyDetector {
     }
     
     public static AnomalyReport detectAnomalies(@NotNull String logContent) {
+        return detectAnomalies(LogSnapshot.of(logContent));
+    }
+
+    public static AnomalyReport detectAnomalies(@NotNull LogSnapshot log) {
         AnomalyReport report = new AnomalyReport();
-        String[] lines = logContent.split("\n");
-        report.totalLines = lines.length;
+        int lineCount = log.getLineCount();
+        report.totalLines = lineCount;
         
         // Calculate baseline statistics
-        Map<String, Double> baseline = calculateBaseline(lines);
+        Map<String, Double> baseline = calculateBaseline(log);
         
         // Detect various anomalies
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
+        int previousSeverity = 0;
+        for (int i = 0; i < lineCount; i++) {
+            String line = log.getLine(i);
+            int severity = getSeverityLevel(line);
             
             // Type 1: Sudden increase in errors
-            if (i > 0 && hasAbruptChange(lines, i, "ERROR")) {
+            if (i > 0 && hasAbruptChange(log, i, "ERROR")) {
                 Anomaly anomaly = new Anomaly(i, line);
                 anomaly.anomalyType = "Abrupt Error Spike";
                 anomaly.score = 0.85;
                 anomaly.reason = "Unexpected increase in error frequency";
-                anomaly.relatedLines = extractRelatedLines(lines, i, 2);
+                anomaly.relatedLines = extractRelatedLines(log, i, 2);
                 report.anomalies.add(anomaly);
             }
             
-            // Type 2: Unusual log length
-            if (line.length() > baseline.get("avgLineLength") * 3) {
+            // Type 2: Unusual log length; lines past the long-line limit are reported on their own
+            boolean oversized = LongLineGuard.isLong(line);
+            if (oversized) {
+                Anomaly anomaly = new Anomaly(i, line);
+                anomaly.anomalyType = "Oversized Line";
+                anomaly.score = 0.6;
+                anomaly.reason = String.format("Line of %,d characters exceeds the long-line limit", line.length());
+                report.anomalies.add(anomaly);
+            } else if (line.length() > baseline.get("avgLineLength") * 3) {
                 Anomaly anomaly = new Anomaly(i, line);
                 anomaly.anomalyType = "Unusually Long Line";
                 anomaly.score = 0.6;
@@ -65,8 +79,8 @@ public class AnomalyDetector {
                 report.anomalies.add(anomaly);
             }
             
-            // Type 3: Rare patterns
-            if (isRarePattern(line, lines)) {
+            // Type 3: Rare patterns; an oversized line is unique anyway and costly to compare
+            if (!oversized && isRarePattern(line, log)) {
                 Anomaly anomaly = new Anomaly(i, line);
                 anomaly.anomalyType = "Rare Pattern";
                 anomaly.score = 0.72;
@@ -75,17 +89,18 @@ public class AnomalyDetector {
             }
             
             // Type 4: Out-of-order severity
-            if (i > 0 && isOutOfOrderSeverity(lines[i - 1], line)) {
+            if (i > 0 && severity < previousSeverity) {
                 Anomaly anomaly = new Anomaly(i, line);
                 anomaly.anomalyType = "Severity Reversal";
                 anomaly.score = 0.65;
                 anomaly.reason = "Lower severity follows higher severity abnormally";
                 report.anomalies.add(anomaly);
             }
+            previousSeverity = severity;
         }
         
         // Calculate metrics
-        report.anomalyRate = (double) report.anomalies.size() / report.totalLines;
+        report.anomalyRate = (double) report.anomalies.size() / Math.max(1, report.totalLines);
         
         // Count anomaly types
         for (Anomaly anomaly : report.anomalies) {
@@ -98,54 +113,58 @@ public class AnomalyDetector {
         return report;
     }
     
-    private static Map<String, Double> calculateBaseline(@NotNull String[] lines) {
+    private static Map<String, Double> calculateBaseline(@NotNull LogSnapshot log) {
         Map<String, Double> baseline = new HashMap<>();
         
         double totalLength = 0;
+        int regularLines = 0;
         int errorCount = 0;
-        
-        for (String line : lines) {
-            totalLength += line.length();
-            if (line.contains("ERROR")) errorCount++;
+        int lineCount = log.getLineCount();
+        
+        for (int i = 0; i < lineCount; i++) {
+            // A few multi-megabyte lines would otherwise hide every other length outlier
+            int length = log.getLineLength(i);
+            if (!LongLineGuard.isLong(length)) {
+                totalLength += length;
+                regularLines++;
+            }
+            if (log.contains(i, "ERROR")) errorCount++;
         }
         
-        baseline.put("avgLineLength", totalLength / lines.length);
-        baseline.put("errorRate", (double) errorCount / lines.length);
-        baseline.put("lineCount", (double) lines.length);
+        baseline.put("avgLineLength", regularLines > 0 ? totalLength / regularLines : 0);
+        baseline.put("errorRate", (double) errorCount / Math.max(1, lineCount));
+        baseline.put("lineCount", (double) lineCount);
         
         return baseline;
     }
     
-    private static boolean hasAbruptChange(@NotNull String[] lines, int currentIndex, @NotNull String pattern) {
+    private static boolean hasAbruptChange(@NotNull LogSnapshot log, int currentIndex, @NotNull String pattern) {
         int windowSize = Math.min(5, currentIndex);
         int countBefore = 0;
         int countAfter = 0;
         
         for (int i = Math.max(0, currentIndex - windowSize); i < currentIndex; i++) {
-            if (lines[i].contains(pattern)) countBefore++;
+            if (log.contains(i, pattern)) countBefore++;
         }
         
-        for (int i = currentIndex; i < Math.min(currentIndex + windowSize, lines.length); i++) {
-            if (lines[i].contains(pattern)) countAfter++;
+        for (int i = currentIndex; i < Math.min(currentIndex + windowSize, log.getLineCount()); i++) {
+            if (log.contains(i, pattern)) countAfter++;
         }
         
         return countAfter > countBefore * 2;
     }
     
-    private static boolean isRarePattern(@NotNull String line, @NotNull String[] allLines) {
+    private static boolean isRarePattern(@NotNull String line, @NotNull LogSnapshot log) {
         int similarity = 0;
-        for (String other : allLines) {
-            if (stringSimilarity(line, other) > 0.8) {
+        CharSequence text = log.getText();
+        for (int i = 0; i < log.getLineCount(); i++) {
+            if (stringSimilarity(line, text, log.getLineStart(i), log.getLineEnd(i)) > 0.8) {
                 similarity++;
+                // Only "at most two" matters
+                if (similarity > 2) return false;
             }
         }
-        return similarity <= 2;
-    }
-    
-    private static boolean isOutOfOrderSeverity(@NotNull String line1, @NotNull String line2) {
-        int sev1 = getSeverityLevel(line1);
-        int sev2 = getSeverityLevel(line2);
-        return sev2 < sev1;
+        return true;
     }
     
     private static int getSeverityLevel(@NotNull String line) {
@@ -157,23 +176,24 @@ public class AnomalyDetector {
         return 0;
     }
     
-    private static double stringSimilarity(@NotNull String s1, @NotNull String s2) {
-        int maxLength = Math.max(s1.length(), s2.length());
+    /** Share of positions where {@code s1} and the text range {@code [start, end)} have the same character. */
+    private static double stringSimilarity(@NotNull String s1, @NotNull CharSequence text, int start, int end) {
+        int maxLength = Math.max(s1.length(), end - start);
         if (maxLength == 0) return 1.0;
         
         int matches = 0;
-        for (int i = 0; i < Math.min(s1.length(), s2.length()); i++) {
-            if (s1.charAt(i) == s2.charAt(i)) matches++;
+        for (int i = 0; i < Math.min(s1.length(), end - start); i++) {
+            if (s1.charAt(i) == text.charAt(start + i)) matches++;
         }
         
         return (double) matches / maxLength;
     }
     
-    private static List<String> extractRelatedLines(@NotNull String[] lines, int index, int count) {
+    private static List<String> extractRelatedLines(@NotNull LogSnapshot log, int index, int count) {
         List<String> related = new ArrayList<>();
-        for (int i = Math.max(0, index - count); i <= Math.min(lines.length - 1, index + count); i++) {
-            if (i != index && lines[i].contains("ERROR")) {
-                related.add(lines[i]);
+        for (int i = Math.max(0, index - count); i <= Math.min(log.getLineCount() - 1, index + count); i++) {
+            if (i != index && log.contains(i, "ERROR")) {
+                related.add(log.getLine(i));
             }
         }
         return related;
@@ -0,0 +1,189 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Parses one newline-aligned chunk of text without knowing the style in effect at its start.
+ * Each style is recorded as a transform {@code (keep, set)} of the unknown start style {@code s},
+ * meaning {@code (s & keep) | set}. Chunks can therefore be parsed in parallel; once the start style
+ * of a chunk is known, {@link #resolve} turns its transforms into real styles.
+ */
+final class AnsiChunkParser {
+    private static final int CANCEL_CHECK_LINES = 4096;
+
+    private final CharSequence text;
+    private final int start;
+    private final int end;
+    private final boolean last;
+
+    /**
+     * Runs as (start, end) offset pairs with their transforms. Every transform change ends a run, even
+     * one without text, so that resolution can tell where the resolved style changed.
+     */
+    final IntArrayList runs = new IntArrayList();
+    final LongArrayList runKeep = new LongArrayList();
+    final LongArrayList runSet = new LongArrayList();
+    /** Escapes as (start, end) offset pairs. */
+    final IntArrayList escapes = new IntArrayList();
+    /** Transform at the end of each line starting in the chunk. */
+    final LongArrayList lineKeep = new LongArrayList();
+    final LongArrayList lineSet = new LongArrayList();
+    /** Transform of the whole chunk. */
+    long keep = AnsiStyle.STYLE_BITS;
+    long set = AnsiStyle.DEFAULT;
+
+    /**
+     * Covers the lines starting in {@code [start, end)}; {@code start} must be a line start and
+     * {@code end} either follows a newline or, for the last chunk, is the text length.
+     */
+    AnsiChunkParser(@NotNull CharSequence text, int start, int end, boolean last) {
+        this.text = text;
+        this.start = start;
+        this.end = end;
+        this.last = last;
+    }
+
+    static long resolve(long style, long keep, long set) {
+        return (style & keep) | set;
+    }
+
+    /**
+     * Resolves parsed chunks in order, starting from {@code style}, into runs, escapes and the end
+     * states of the lines from {@code firstLine} on. Returns the style at the end of the last chunk.
+     */
+    static long resolveAll(@NotNull List<AnsiChunkParser> chunks, long style, @NotNull AnsiLogFileOpenListener.StyleRunSink sink,
+                           @NotNull IntArrayList escapes, long @NotNull [] lineEndStates, int firstLine) {
+        int line = firstLine;
+        int pendingStart = -1;
+        int pendingEnd = -1;
+        long pendingStyle = AnsiStyle.DEFAULT;
+        for (AnsiChunkParser chunk : chunks) {
+            for (int r = 0; r < chunk.runKeep.size(); r++) {
+                int runStart = chunk.runs.getInt(2 * r);
+                int runEnd = chunk.runs.getInt(2 * r + 1);
+                long runStyle = resolve(style, chunk.runKeep.getLong(r), chunk.runSet.getLong(r));
+                // A transform change need not change the resolved style; merge like the sequential parser does
+                if (pendingStart >= 0 && runStyle == pendingStyle && !containsNewline(chunk.text, pendingEnd, runStart)) {
+                    if (runEnd > runStart) pendingEnd = runEnd;
+                    continue;
+                }
+                if (pendingStart >= 0) sink.addRun(pendingStart, pendingEnd, pendingStyle);
+                pendingStart = runEnd > runStart ? runStart : -1;
+                pendingEnd = runEnd;
+                pendingStyle = runStyle;
+            }
+            escapes.addAll(chunk.escapes);
+            for (int l = 0; l < chunk.lineKeep.size() && line < lineEndStates.length; l++) {
+                lineEndStates[line++] = resolve(style, chunk.lineKeep.getLong(l), chunk.lineSet.getLong(l));
+            }
+            style = resolve(style, chunk.keep, chunk.set);
+        }
+        if (pendingStart >= 0) sink.addRun(pendingStart, pendingEnd, pendingStyle);
+        return style;
+    }
+
+    void parse(@Nullable ProgressIndicator indicator) {
+        AnsiSgrLexer lexer = new AnsiSgrLexer();
+        int lineStart = start;
+        for (int line = 0; ; line++) {
+            if (indicator != null && line % CANCEL_CHECK_LINES == 0) indicator.checkCanceled();
+            int lineEnd = indexOfNewline(lineStart);
+            parseLine(lexer, lineStart, lineEnd);
+            lineStart = lineEnd + 1;
+            // The last chunk also owns the empty line after a trailing newline
+            if (last ? lineEnd == text.length() : lineStart >= end) return;
+        }
+    }
+
+    private void parseLine(AnsiSgrLexer lexer, int lineStart, int lineEnd) {
+        // Same visible range as the sequential parser; elsewhere only the transform changes
+        int cutoff = LongLineGuard.cutoff(lineStart, lineEnd);
+        long visible = AnsiTerminalLine.collapse(text, lineStart, cutoff);
+        int lo = visible == AnsiTerminalLine.NONE ? lineStart : AnsiTerminalLine.visibleStart(visible);
+        int hi = visible == AnsiTerminalLine.NONE ? cutoff : AnsiTerminalLine.visibleEnd(visible);
+        if (lo > lineStart) {
+            escapes.add(lineStart);
+            escapes.add(lo);
+        }
+        lexer.reset(text, lineStart, lineEnd);
+        int runStart = -1;
+        int runEnd = -1;
+        int lastIndex = lo;
+        boolean tail = false;
+        while (lexer.next()) {
+            int escStart = lexer.getStart();
+            boolean hidden = lexer.getEnd() <= lo;
+            if (!hidden && !tail && lexer.getEnd() > hi) {
+                int segmentEnd = Math.min(escStart, hi);
+                if (segmentEnd > lastIndex) {
+                    if (runStart < 0) runStart = lastIndex;
+                    runEnd = segmentEnd;
+                }
+                if (runStart >= 0) addRun(runStart, runEnd);
+                runStart = -1;
+                tail = true;
+            }
+            long stepKeep = AnsiStyle.apply(AnsiStyle.STYLE_BITS, lexer.getParams(), lexer.getParamCount());
+            long stepSet = AnsiStyle.apply(AnsiStyle.DEFAULT, lexer.getParams(), lexer.getParamCount());
+            long nextKeep = keep & stepKeep;
+            long nextSet = (set & stepKeep) | stepSet;
+            if (hidden || tail) {
+                keep = nextKeep;
+                set = nextSet;
+                continue;
+            }
+            if (escStart > lastIndex) {
+                if (runStart < 0) runStart = lastIndex;
+                runEnd = escStart;
+            }
+            if (nextKeep != keep || nextSet != set) {
+                if (runStart >= 0) addRun(runStart, runEnd); else addRun(escStart, escStart);
+                runStart = -1;
+                keep = nextKeep;
+                set = nextSet;
+            }
+            lastIndex = lexer.getEnd();
+            escapes.add(escStart);
+            escapes.add(lastIndex);
+        }
+        if (!tail && lastIndex < hi) {
+            if (runStart < 0) runStart = lastIndex;
+            runEnd = hi;
+        }
+        if (runStart >= 0) addRun(runStart, runEnd);
+        if (hi < cutoff) {
+            escapes.add(hi);
+            escapes.add(cutoff);
+        }
+        lineKeep.add(keep);
+        lineSet.add(set);
+    }
+
+    private void addRun(int runStart, int runEnd) {
+        runs.add(runStart);
+        runs.add(runEnd);
+        runKeep.add(keep);
+        runSet.add(set);
+    }
+
+    private static boolean containsNewline(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') return true;
+        }
+        return false;
+    }
+
+    private int indexOfNewline(int from) {
+        int length = text.length();
+        for (int i = from; i < length; i++) {
+            if (text.charAt(i) == '\n') return i;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,117 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.fileTypes.PlainTextFileType;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.testFramework.LightVirtualFile;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Read-only projection of a log with all escape sequences removed. The stripped text is colored with
+ * highlighters only, so no fold regions are needed; an {@link AnsiOffsetMap} translates positions back
+ * to the original file.
+ */
+public final class AnsiCleanView {
+    static final Key<AnsiCleanView> KEY = Key.create("AnsiCleanView");
+
+    private final VirtualFile source;
+    private final String cleanText;
+    private final AnsiOffsetMap offsetMap;
+    private final int[] runs;
+    private final long[] runStyles;
+    private final long[] lineEndStates;
+
+    private AnsiCleanView(VirtualFile source, String cleanText, AnsiOffsetMap offsetMap, int[] runs, long[] runStyles, long[] lineEndStates) {
+        this.source = source;
+        this.cleanText = cleanText;
+        this.offsetMap = offsetMap;
+        this.runs = runs;
+        this.runStyles = runStyles;
+        this.lineEndStates = lineEndStates;
+    }
+
+    /** Clean view the file shows, or null if it is not one. */
+    public static @Nullable AnsiCleanView getInstance(@NotNull VirtualFile file) {
+        return file.getUserData(KEY);
+    }
+
+    public @NotNull VirtualFile getSource() {
+        return source;
+    }
+
+    public @NotNull AnsiOffsetMap getOffsetMap() {
+        return offsetMap;
+    }
+
+    /** Strips the text in one pass, collecting style runs in clean offsets. */
+    static @NotNull AnsiCleanView build(@NotNull VirtualFile source, @NotNull CharSequence text) {
+        AnsiStripper stripper = new AnsiStripper(true);
+        RunCollector collector = new RunCollector();
+        String clean = stripper.strip(text, 0, text.length(), collector).toString();
+        collector.finish(clean);
+        return new AnsiCleanView(source, clean, stripper.getOffsetMap(), collector.runs.toIntArray(),
+                collector.runStyles.toLongArray(), collector.lineEndStates.toLongArray());
+    }
+
+    /** Opens the view in a new read-only editor with the caret at the clean position of {@code rawCaret}. */
+    void open(@NotNull Project project, int rawCaret) {
+        LightVirtualFile file = new LightVirtualFile(source.getName() + " [clean]", PlainTextFileType.INSTANCE, cleanText);
+        file.setWritable(false);
+        file.putUserData(KEY, this);
+        Editor editor = FileEditorManager.getInstance(project)
+                .openTextEditor(new OpenFileDescriptor(project, file, offsetMap.toClean(rawCaret)), true);
+        if (editor != null) {
+            long stamp = editor.getDocument().getModificationStamp();
+            AnsiRenderModel model = AnsiRenderModelService.getInstance(project).getOrCreate(editor);
+            AsyncAnsiProcessor.applyPlan(model, new AnsiRenderPlan(stamp, 0, cleanText.length(), runs, runStyles, new int[0], lineEndStates));
+        }
+    }
+
+    /** Style runs and line end states of the clean text, built from the sequences as they are removed. */
+    private static final class RunCollector implements AnsiStripper.SequenceListener {
+        final IntArrayList runs = new IntArrayList();
+        final LongArrayList runStyles = new LongArrayList();
+        final LongArrayList lineEndStates = new LongArrayList();
+        private long style = AnsiStyle.DEFAULT;
+        private int runStart;
+        private int scanned;
+
+        @Override
+        public void sequence(@NotNull CharSequence clean, @NotNull AnsiSgrLexer lexer) {
+            addLineEnds(clean);
+            long next = AnsiStyle.apply(style, lexer.getParams(), lexer.getParamCount());
+            if (next != style) {
+                addRun(clean.length());
+                runStart = clean.length();
+                style = next;
+            }
+        }
+
+        void finish(@NotNull CharSequence clean) {
+            addLineEnds(clean);
+            addRun(clean.length());
+            lineEndStates.add(style);
+        }
+
+        private void addLineEnds(CharSequence clean) {
+            for (int i = scanned; i < clean.length(); i++) {
+                if (clean.charAt(i) == '\n') lineEndStates.add(style);
+            }
+            scanned = clean.length();
+        }
+
+        private void addRun(int end) {
+            if (runStart >= end || style == AnsiStyle.DEFAULT) return;
+            runs.add(runStart);
+            runs.add(end);
+            runStyles.add(style);
+        }
+    }
+}
@@ -6,8 +6,6 @@ import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.actionSystem.PlatformDataKeys;
 import com.intellij.openapi.ui.Messages;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.NotNull;
-import java.util.regex.Matcher;
 
 public class AnsiCodeStatisticsAction extends AnAction {
     @Override
@@ -15,25 +13,19 @@ public class AnsiCodeStatisticsAction extends AnAction {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
         if (editor == null) return;
         
-        String text = editor.getDocument().getText();
-        Matcher matcher = AnsiPatternUtil.ANSI_PATTERN.matcher(text);
+        CharSequence text = editor.getDocument().getImmutableCharSequence();
         
         int totalCodes = 0;
         int totalLines = editor.getDocument().getLineCount();
         int linesWithCodes = 0;
         
-        while (matcher.find()) {
-            totalCodes++;
-        }
-        
-        if (totalCodes > 0) {
-            for (int i = 0; i < totalLines; i++) {
-                int lineStart = editor.getDocument().getLineStartOffset(i);
-                int lineEnd = editor.getDocument().getLineEndOffset(i);
-                String lineText = editor.getDocument().getText(new com.intellij.openapi.util.TextRange(lineStart, lineEnd));
-                if (lineText.contains("\u001B") || lineText.contains("\\u001B")) {
-                    linesWithCodes++;
-                }
+        for (int i = 0; i < totalLines; i++) {
+            int lineStart = editor.getDocument().getLineStartOffset(i);
+            int lineEnd = editor.getDocument().getLineEndOffset(i);
+            int lineCodes = AnsiSgrLexer.count(text, lineStart, lineEnd);
+            totalCodes += lineCodes;
+            if (lineCodes > 0) {
+                linesWithCodes++;
             }
         }
         
@@ -52,7 +44,6 @@ public class AnsiCodeStatisticsAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        String text = editor != null ? editor.getDocument().getText() : "";
-        e.getPresentation().setEnabled(!text.isEmpty() && (text.contains("\u001B") || text.contains("\\u001B")));
+        e.getPresentation().setEnabled(editor != null && AnsiDocumentFacts.getInstance().hasAnsi(editor.getDocument()));
     }
 }
@@ -0,0 +1,13 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.editor.colors.EditorColorsListener;
+import com.intellij.openapi.editor.colors.EditorColorsScheme;
+import org.jetbrains.annotations.Nullable;
+
+/** Recolors open logs for the new editor background when the color scheme changes. */
+public class AnsiColorSchemeListener implements EditorColorsListener {
+    @Override
+    public void globalSchemeChange(@Nullable EditorColorsScheme scheme) {
+        AnsiPalette.apply();
+    }
+}
@@ -0,0 +1,145 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Cheap facts about a document for action {@code update()} methods, such as whether it contains ANSI
+ * codes or errors. Each fact is an occurrence count computed once per document; every pattern lies
+ * within one line, so edits reported by the editor event multicaster adjust the counts by re-counting
+ * only the changed lines. A document edited without an editor is counted again on the next query.
+ */
+@Service(Service.Level.APP)
+public final class AnsiDocumentFacts implements DocumentListener, Disposable {
+    private static final Key<Counts> KEY = Key.create("AnsiDocumentFacts");
+
+    public AnsiDocumentFacts() {
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(this, this);
+    }
+
+    public static @NotNull AnsiDocumentFacts getInstance() {
+        return ApplicationManager.getApplication().getService(AnsiDocumentFacts.class);
+    }
+
+    /** True if the document contains an ESC character or the literal {@code \u001B} form. */
+    public boolean hasAnsi(@NotNull Document doc) {
+        return counts(doc).ansi > 0;
+    }
+
+    public boolean hasError(@NotNull Document doc) {
+        return counts(doc).error > 0;
+    }
+
+    /** True if the document contains {@code "at "}, as stack trace frames do. */
+    public boolean hasStackTrace(@NotNull Document doc) {
+        return counts(doc).stackFrame > 0;
+    }
+
+    /** True if a line contains a time of day such as {@code 12:34:56}. */
+    public boolean hasTimestamp(@NotNull Document doc) {
+        return counts(doc).timestamp > 0;
+    }
+
+    private static Counts counts(Document doc) {
+        Counts counts = doc.getUserData(KEY);
+        if (counts == null) {
+            counts = new Counts();
+            doc.putUserData(KEY, counts);
+        }
+        synchronized (counts) {
+            long stamp = doc.getModificationStamp();
+            if (counts.stamp != stamp) {
+                counts.clear();
+                CharSequence text = doc.getImmutableCharSequence();
+                counts.add(text, 0, text.length(), 1);
+                counts.stamp = stamp;
+            }
+            return counts;
+        }
+    }
+
+    @Override
+    public void beforeDocumentChange(@NotNull DocumentEvent event) {
+        Document doc = event.getDocument();
+        Counts counts = doc.getUserData(KEY);
+        if (counts == null) return;
+        synchronized (counts) {
+            if (counts.stamp != doc.getModificationStamp()) return;
+            int start = doc.getLineStartOffset(doc.getLineNumber(event.getOffset()));
+            int end = doc.getLineEndOffset(doc.getLineNumber(event.getOffset() + event.getOldLength()));
+            counts.add(doc.getImmutableCharSequence(), start, end, -1);
+            counts.tracking = true;
+        }
+    }
+
+    @Override
+    public void documentChanged(@NotNull DocumentEvent event) {
+        Document doc = event.getDocument();
+        Counts counts = doc.getUserData(KEY);
+        if (counts == null) return;
+        synchronized (counts) {
+            if (!counts.tracking) return;
+            counts.tracking = false;
+            int start = doc.getLineStartOffset(doc.getLineNumber(event.getOffset()));
+            int end = doc.getLineEndOffset(doc.getLineNumber(event.getOffset() + event.getNewLength()));
+            counts.add(doc.getImmutableCharSequence(), start, end, 1);
+            counts.stamp = doc.getModificationStamp();
+        }
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    private static final class Counts {
+        long stamp = -1;
+        boolean tracking;
+        int ansi;
+        int error;
+        int stackFrame;
+        int timestamp;
+
+        void clear() {
+            ansi = error = stackFrame = timestamp = 0;
+        }
+
+        /** Adds {@code sign} for every occurrence in {@code [from, to)}, which must span whole lines. */
+        void add(CharSequence text, int from, int to, int sign) {
+            for (int i = from; i < to; i++) {
+                char c = text.charAt(i);
+                if (c == '\u001B' || c == '\\' && matches(text, i, to, "\\u001B")) {
+                    ansi += sign;
+                } else if (c == 'E' && matches(text, i, to, "ERROR")) {
+                    error += sign;
+                } else if (c == 'a' && matches(text, i, to, "at ")) {
+                    stackFrame += sign;
+                } else if (c == ':' && isTime(text, i, to)) {
+                    timestamp += sign;
+                }
+            }
+        }
+
+        private static boolean matches(CharSequence text, int i, int to, String word) {
+            if (i + word.length() > to) return false;
+            for (int k = 1; k < word.length(); k++) {
+                if (text.charAt(i + k) != word.charAt(k)) return false;
+            }
+            return true;
+        }
+
+        /** Matches {@code \d{1,2}:\d{2}:\d{2}} with {@code colon} at its first colon. */
+        private static boolean isTime(CharSequence text, int colon, int to) {
+            return colon > 0 && Character.isDigit(text.charAt(colon - 1)) && colon + 5 < to
+                    && Character.isDigit(text.charAt(colon + 1)) && Character.isDigit(text.charAt(colon + 2))
+                    && text.charAt(colon + 3) == ':'
+                    && Character.isDigit(text.charAt(colon + 4)) && Character.isDigit(text.charAt(colon + 5));
+        }
+    }
+}
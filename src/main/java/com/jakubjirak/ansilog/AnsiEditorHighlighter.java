@@ -0,0 +1,43 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.lexer.Lexer;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.colors.EditorColorsScheme;
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+import com.intellij.openapi.editor.ex.EditorEx;
+import com.intellij.openapi.editor.ex.util.LexerEditorHighlighter;
+import com.intellij.openapi.fileTypes.SyntaxHighlighterBase;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Editor-highlighter rendering backend. Instead of one range highlighter per style run, the platform
+ * keeps the {@link AnsiLexer} tokens in its compact segment array and re-lexes incrementally on edits.
+ */
+public class AnsiEditorHighlighter extends LexerEditorHighlighter {
+    public AnsiEditorHighlighter(@NotNull EditorColorsScheme scheme) {
+        super(new AnsiSyntaxHighlighter(), scheme);
+    }
+
+    public static void install(@NotNull Editor editor) {
+        if (editor instanceof EditorEx && !isInstalled(editor)) {
+            ((EditorEx) editor).setHighlighter(new AnsiEditorHighlighter(editor.getColorsScheme()));
+        }
+    }
+
+    public static boolean isInstalled(@NotNull Editor editor) {
+        return editor instanceof EditorEx && ((EditorEx) editor).getHighlighter() instanceof AnsiEditorHighlighter;
+    }
+
+    private static class AnsiSyntaxHighlighter extends SyntaxHighlighterBase {
+        @Override
+        public @NotNull Lexer getHighlightingLexer() {
+            return new AnsiLexer();
+        }
+
+        @Override
+        public TextAttributesKey @NotNull [] getTokenHighlights(IElementType tokenType) {
+            return AnsiStyleTokens.keysOf(tokenType);
+        }
+    }
+}
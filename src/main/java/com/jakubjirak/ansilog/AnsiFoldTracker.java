@@ -0,0 +1,158 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.FoldRegion;
+import com.intellij.openapi.editor.FoldingModel;
+import com.intellij.openapi.editor.event.CaretEvent;
+import com.intellij.openapi.editor.event.CaretListener;
+import com.intellij.openapi.util.Key;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tracks the fold regions this plugin created for escape sequences in one editor, ordered by offset.
+ * Fold regions are range markers, so edits shift them without changing their order. A refresh diffs
+ * the escapes found in a range against the tracked regions and only adds or removes what changed;
+ * folds created by the user or other plugins are never touched.
+ * <p>
+ * If {@link AnsiLogSettingsState#isShowAnsiCodesOnCursor()} is set, the folds on the caret line are
+ * expanded and collapse again once the caret leaves it. Both lines are found by binary search over
+ * the tracked regions, so caret movement does not depend on the number of folds.
+ */
+public class AnsiFoldTracker {
+    private static final Key<AnsiFoldTracker> KEY = Key.create("AnsiFoldTracker");
+
+    private final List<FoldRegion> regions = new ArrayList<>();
+    /** Regions expanded because the caret is on their line. */
+    private final List<FoldRegion> revealed = new ArrayList<>();
+    private int revealedLine = -1;
+
+    public static @NotNull AnsiFoldTracker getInstance(@NotNull Editor editor) {
+        AnsiFoldTracker tracker = editor.getUserData(KEY);
+        if (tracker == null) {
+            AnsiFoldTracker created = new AnsiFoldTracker();
+            editor.putUserData(KEY, created);
+            editor.getCaretModel().addCaretListener(new CaretListener() {
+                @Override
+                public void caretPositionChanged(@NotNull CaretEvent event) {
+                    if (event.getCaret() != null && event.getCaret().isPrimary()) {
+                        created.reveal(editor, event.getNewPosition().line, false);
+                    }
+                }
+            });
+            tracker = created;
+        }
+        return tracker;
+    }
+
+    /**
+     * Expands the folds on {@code line} and collapses the ones revealed before, if escape codes are shown
+     * on the caret line. With {@code force} the line is revealed again even if it did not change.
+     */
+    void reveal(@NotNull Editor editor, int line, boolean force) {
+        if (line == revealedLine && !force) return;
+        boolean enabled = AnsiLogSettingsState.getInstance().isShowAnsiCodesOnCursor();
+        if (!enabled && revealed.isEmpty()) return;
+
+        List<FoldRegion> onLine = new ArrayList<>();
+        Document doc = editor.getDocument();
+        if (enabled && line >= 0 && line < doc.getLineCount()) {
+            int lineEnd = doc.getLineEndOffset(line);
+            for (int i = lowerBound(doc.getLineStartOffset(line)); i < regions.size(); i++) {
+                FoldRegion region = regions.get(i);
+                if (region.getStartOffset() > lineEnd) break;
+                if (region.isValid()) onLine.add(region);
+            }
+        }
+        List<FoldRegion> previous = new ArrayList<>(revealed);
+        editor.getFoldingModel().runBatchFoldingOperation(() -> {
+            for (FoldRegion region : previous) {
+                if (region.isValid() && !onLine.contains(region)) region.setExpanded(false);
+            }
+            for (FoldRegion region : onLine) region.setExpanded(true);
+        });
+        revealed.clear();
+        revealed.addAll(onLine);
+        revealedLine = enabled ? line : -1;
+    }
+
+    /**
+     * Makes the tracked folds starting in {@code [start, end)} match {@code escapes},
+     * given as sorted (start, end) offset pairs.
+     */
+    public void sync(@NotNull Editor editor, int start, int end, @NotNull IntArrayList escapes) {
+        int from = lowerBound(start);
+        int to = from;
+        while (to < regions.size() && regions.get(to).getStartOffset() < end) to++;
+        int count = escapes.size() / 2;
+        if (from == to && count == 0) return;
+
+        List<FoldRegion> merged = new ArrayList<>(count);
+        FoldingModel foldingModel = editor.getFoldingModel();
+        int rangeFrom = from;
+        int rangeTo = to;
+        foldingModel.runBatchFoldingOperation(() -> {
+            int i = rangeFrom;
+            int k = 0;
+            while (i < rangeTo || k < count) {
+                FoldRegion region = i < rangeTo ? regions.get(i) : null;
+                if (region != null && !region.isValid()) {
+                    i++;
+                    continue;
+                }
+                int escStart = k < count ? escapes.getInt(2 * k) : Integer.MAX_VALUE;
+                int escEnd = k < count ? escapes.getInt(2 * k + 1) : Integer.MAX_VALUE;
+                if (region != null && region.getStartOffset() == escStart && region.getEndOffset() == escEnd) {
+                    merged.add(region);
+                    i++;
+                    k++;
+                } else if (region != null && region.getStartOffset() < escEnd) {
+                    foldingModel.removeFoldRegion(region);
+                    i++;
+                } else {
+                    try {
+                        FoldRegion added = foldingModel.addFoldRegion(escStart, escEnd, "");
+                        if (added != null) {
+                            added.setExpanded(false);
+                            merged.add(added);
+                        }
+                    } catch (Exception e) {
+                        // Ignore fold creation errors
+                    }
+                    k++;
+                }
+            }
+        });
+        regions.subList(from, to).clear();
+        regions.addAll(from, merged);
+        if (!revealed.isEmpty() || AnsiLogSettingsState.getInstance().isShowAnsiCodesOnCursor()) {
+            // Folds recreated on the caret line start collapsed
+            Document doc = editor.getDocument();
+            int line = doc.getLineNumber(Math.min(editor.getCaretModel().getOffset(), doc.getTextLength()));
+            if (doc.getLineEndOffset(line) >= start && doc.getLineStartOffset(line) <= end) reveal(editor, line, true);
+        }
+    }
+
+    /** Tracked regions in offset order; may contain regions invalidated by edits since the last sync. */
+    public @NotNull List<FoldRegion> getRegions() {
+        return regions;
+    }
+
+    public int size() {
+        return regions.size();
+    }
+
+    private int lowerBound(int offset) {
+        int lo = 0;
+        int hi = regions.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (regions.get(mid).getStartOffset() < offset) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,211 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Per-document highlighting state kept between edits, owned by the document's {@link AnsiRenderModel}.
+ * Stores the SGR style in effect at the end of every line, so an edit only needs
+ * re-parsing from the changed line until the style state converges again.
+ * It also remembers the parsed length and a hash of the text just before it, so that a log growing
+ * on disk can be recognized as an append and only its new suffix parsed.
+ */
+public class AnsiHighlightSession {
+    private static final int TAIL_HASH_LENGTH = 256;
+
+    private long[] lineEndStates = new long[0];
+    private int lineCount;
+    private boolean valid;
+    private int changeStartLine;
+    private int changeOldEndLine;
+    private int dirtyStartLine = -1;
+    private int dirtyEndLine = -1;
+    private volatile int generation;
+    private int parsedLength = -1;
+    private int tailHash;
+    private boolean appendOnly;
+    /** Generation of the background append pass in flight, stale once a newer pass starts. */
+    private int appendGeneration = -1;
+    /** Number of changes other than appends at the end, tracked even while the session is invalid. */
+    private int rewriteCount;
+
+    /** Called once a full pass over {@code text} has recorded the end state of every line. */
+    void reset(long @NotNull [] states, @NotNull CharSequence text) {
+        lineEndStates = states;
+        lineCount = states.length;
+        valid = true;
+        dirtyStartLine = -1;
+        dirtyEndLine = -1;
+        markParsed(text);
+    }
+
+    /**
+     * Called once a pass over the first {@code parsedLength} characters of the document has recorded
+     * the end state of every line they contain. Text appended since is left dirty from the pass's last
+     * line on, which may have grown, so a follow-up pass parses only the new suffix.
+     */
+    void reset(long @NotNull [] states, @NotNull Document doc, int parsedLength) {
+        CharSequence text = doc.getImmutableCharSequence();
+        if (text.length() == parsedLength) {
+            reset(states, text);
+            return;
+        }
+        int count = lineCount(doc);
+        int firstDirty = states.length - 1;
+        lineEndStates = Arrays.copyOf(states, count);
+        Arrays.fill(lineEndStates, firstDirty, count, AnsiStyle.UNKNOWN);
+        lineCount = count;
+        valid = true;
+        dirtyStartLine = firstDirty;
+        dirtyEndLine = count - 1;
+        this.parsedLength = parsedLength;
+        tailHash = tailHash(text, parsedLength);
+        appendOnly = true;
+    }
+
+    /** Records that every line of {@code text} has been parsed. */
+    void markParsed(@NotNull CharSequence text) {
+        parsedLength = text.length();
+        tailHash = tailHash(text, parsedLength);
+        appendOnly = true;
+    }
+
+    /**
+     * True if every change since the last pass inserted text at the end of the document and the text
+     * parsed then is still in place, checked by its length and the hash of its last characters.
+     */
+    boolean isAppendOnly(@NotNull CharSequence text) {
+        return valid && appendOnly && parsedLength >= 0 && text.length() >= parsedLength
+                && tailHash(text, parsedLength) == tailHash;
+    }
+
+    int getParsedLength() {
+        return parsedLength;
+    }
+
+    boolean isValid() {
+        return valid;
+    }
+
+    void invalidate() {
+        valid = false;
+    }
+
+    /** Starts a new full pass; passes started earlier see a different generation and give up. */
+    int nextGeneration() {
+        return ++generation;
+    }
+
+    int getGeneration() {
+        return generation;
+    }
+
+    /** Starts a background pass over appended lines; see {@link #isAppendPassRunning}. */
+    int startAppendPass() {
+        appendGeneration = nextGeneration();
+        return appendGeneration;
+    }
+
+    /** True while the append pass started last is neither finished, cancelled nor superseded. */
+    boolean isAppendPassRunning() {
+        return appendGeneration == generation;
+    }
+
+    void endAppendPass(int generation) {
+        if (appendGeneration == generation) appendGeneration = -1;
+    }
+
+    /** Changes a plan computed earlier cannot be applied across; appends at the end do not count. */
+    int getRewriteCount() {
+        return rewriteCount;
+    }
+
+    void beforeChange(@NotNull Document doc, @NotNull DocumentEvent event) {
+        if (!valid) return;
+        if (lineCount != lineCount(doc)) {
+            valid = false;
+            return;
+        }
+        if (event.getOffset() != doc.getTextLength() || event.getOldLength() != 0) appendOnly = false;
+        changeStartLine = doc.getLineNumber(event.getOffset());
+        changeOldEndLine = doc.getLineNumber(event.getOffset() + event.getOldLength());
+    }
+
+    void afterChange(@NotNull Document doc, @NotNull DocumentEvent event) {
+        if (event.getOldLength() != 0 || event.getOffset() + event.getNewLength() != doc.getTextLength()) rewriteCount++;
+        if (!valid) return;
+        int newEndLine = doc.getLineNumber(event.getOffset() + event.getNewLength());
+        int delta = newEndLine - changeOldEndLine;
+
+        // The changed lines get unknown states, except that the last one keeps the old end state
+        // of the line it replaces: if re-parsing reproduces it, later lines are unaffected.
+        long oldEndState = lineEndStates[changeOldEndLine];
+        int newCount = lineCount + delta;
+        if (delta != 0) {
+            if (newCount > lineEndStates.length) {
+                lineEndStates = Arrays.copyOf(lineEndStates, Math.max(newCount, lineEndStates.length + (lineEndStates.length >> 1)));
+            }
+            System.arraycopy(lineEndStates, changeOldEndLine + 1, lineEndStates, newEndLine + 1, lineCount - changeOldEndLine - 1);
+            lineCount = newCount;
+        }
+        Arrays.fill(lineEndStates, changeStartLine, newEndLine, AnsiStyle.UNKNOWN);
+        lineEndStates[newEndLine] = oldEndState;
+        if (lineCount != lineCount(doc)) {
+            valid = false;
+            return;
+        }
+
+        if (dirtyStartLine < 0) {
+            dirtyStartLine = changeStartLine;
+            dirtyEndLine = newEndLine;
+        } else {
+            dirtyEndLine = dirtyEndLine > changeOldEndLine ? dirtyEndLine + delta : newEndLine;
+            dirtyStartLine = Math.min(dirtyStartLine, changeStartLine);
+        }
+    }
+
+    boolean hasDirtyLines() {
+        return dirtyStartLine >= 0;
+    }
+
+    int getDirtyStartLine() {
+        return dirtyStartLine;
+    }
+
+    int getDirtyEndLine() {
+        return dirtyEndLine;
+    }
+
+    void clearDirtyLines() {
+        dirtyStartLine = -1;
+        dirtyEndLine = -1;
+    }
+
+    int getLineCount() {
+        return lineCount;
+    }
+
+    /** Packed {@link AnsiStyle} at the end of the line, or {@link AnsiStyle#UNKNOWN} for lines changed since the last pass. */
+    long getLineEndState(int line) {
+        return lineEndStates[line];
+    }
+
+    void setLineEndState(int line, long state) {
+        lineEndStates[line] = state;
+    }
+
+    private static int tailHash(CharSequence text, int end) {
+        int hash = 0;
+        for (int i = Math.max(0, end - TAIL_HASH_LENGTH); i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash;
+    }
+
+    static int lineCount(@NotNull Document doc) {
+        return Math.max(1, doc.getLineCount());
+    }
+}
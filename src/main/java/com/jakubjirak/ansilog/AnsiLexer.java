@@ -0,0 +1,85 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.lexer.LexerBase;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Lexer for the editor-highlighter rendering backend. Every token is a stretch of text in one SGR style,
+ * including the escape sequences inside it; a token ends after the escape that changes the style or at a
+ * line end. The lexer state is the style id from {@link AnsiStyleTokens}, so the platform can restart
+ * lexing at any token that begins in the default style.
+ */
+public class AnsiLexer extends LexerBase {
+    private final AnsiSgrLexer sgr = new AnsiSgrLexer();
+    private CharSequence buffer = "";
+    private int bufferEnd;
+    private int tokenStart;
+    private int tokenEnd;
+    private int tokenState;
+    private long style;
+
+    @Override
+    public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState) {
+        this.buffer = buffer;
+        this.bufferEnd = endOffset;
+        this.tokenEnd = startOffset;
+        this.style = AnsiStyleTokens.styleOf(initialState);
+        advance();
+    }
+
+    @Override
+    public int getState() {
+        return tokenState;
+    }
+
+    @Override
+    public @Nullable IElementType getTokenType() {
+        return tokenStart < tokenEnd ? AnsiStyleTokens.typeOf(tokenState) : null;
+    }
+
+    @Override
+    public int getTokenStart() {
+        return tokenStart;
+    }
+
+    @Override
+    public int getTokenEnd() {
+        return tokenEnd;
+    }
+
+    @Override
+    public void advance() {
+        tokenStart = tokenEnd;
+        tokenState = AnsiStyleTokens.idOf(style);
+        // Past the id cap a style gets id 0; lex on in the default style so a restart there agrees
+        if (tokenState == 0) style = AnsiStyle.DEFAULT;
+        if (tokenStart >= bufferEnd) return;
+
+        int limit = tokenStart;
+        while (limit < bufferEnd && buffer.charAt(limit) != '\n') limit++;
+        if (limit < bufferEnd) limit++;
+
+        sgr.reset(buffer, tokenStart, limit);
+        while (sgr.next()) {
+            long next = AnsiStyle.apply(style, sgr.getParams(), sgr.getParamCount());
+            if (next != style) {
+                style = next;
+                tokenEnd = sgr.getEnd();
+                return;
+            }
+        }
+        tokenEnd = limit;
+    }
+
+    @Override
+    public @NotNull CharSequence getBufferSequence() {
+        return buffer;
+    }
+
+    @Override
+    public int getBufferEnd() {
+        return bufferEnd;
+    }
+}
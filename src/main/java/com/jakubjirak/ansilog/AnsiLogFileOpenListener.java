@@ -1,229 +1,190 @@
 package com.jakubjirak.ansilog;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.*;
 import com.intellij.openapi.editor.markup.*;
 import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.FileEditorManagerEvent;
 import com.intellij.openapi.fileEditor.FileEditorManagerListener;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.fileEditor.TextEditor;
-import com.intellij.openapi.editor.ex.EditorEx;
-import com.intellij.openapi.Disposable;
-import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.editor.ex.MarkupModelEx;
+import com.intellij.openapi.util.Key;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.awt.Color;
-import java.awt.Font;
 import java.util.*;
-import com.intellij.openapi.editor.event.DocumentEvent;
-import com.intellij.openapi.editor.event.DocumentListener;
-import com.intellij.util.Alarm;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 
 public class AnsiLogFileOpenListener implements FileEditorManagerListener {
-    private final Map<Document, Alarm> alarms = new WeakHashMap<>();
-    private static final int DEBOUNCE_MS = 200;
+    /** Marks the highlighters this plugin created and holds the style each one was created for. */
+    private static final Key<Long> ANSI_HIGHLIGHTER = Key.create("AnsiLogHighlighter");
 
     @Override
     public void fileOpened(@NotNull FileEditorManager source, @NotNull VirtualFile file) {
+        if (AnsiCleanView.getInstance(file) != null) return;
         String name = file.getName();
         List<String> exts = AnsiLogSettingsState.getInstance().getExtensions();
         boolean match = exts.stream().anyMatch(ext -> name.endsWith("." + ext));
         if (!match) return;
         Arrays.stream(source.getEditors(file)).filter(e -> e instanceof TextEditor).findFirst().ifPresent(e -> {
             Editor editor = ((TextEditor) e).getEditor();
-            applyAnsiHighlighting(editor);
-            attachLiveUpdate(editor);
+            AnsiRenderController.Mode mode = AnsiRenderController.getInstance().chooseMode(editor.getDocument());
+            // Too slow to render even lazily when last measured; the text is shown as it is
+            if (mode == AnsiRenderController.Mode.PLAIN) return;
+            if (AnsiLogSettingsState.getInstance().getRenderingBackend() == AnsiLogSettingsState.RenderingBackend.LEXER) {
+                AnsiEditorHighlighter.install(editor);
+            } else if (mode == AnsiRenderController.Mode.LAZY) {
+                ViewportAnsiHighlighter.install(editor);
+                return;
+            }
+            AnsiRenderModelService.getInstance(source.getProject()).open(editor);
         });
     }
 
-    public void applyAnsiHighlighting(Editor editor) {
-        String text = editor.getDocument().getText();
-        MarkupModel markup = editor.getMarkupModel();
-        markup.removeAllHighlighters();
-
-        boolean hideAnsiCodes = AnsiLogSettingsState.getInstance().isHideAnsiCodes();
-        
-        if (hideAnsiCodes) {
-            // Fold all ANSI codes to hide them completely
-            FoldingModel foldingModel = ((EditorEx) editor).getFoldingModel();
-            if (foldingModel != null) {
-                foldingModel.runBatchFoldingOperation(() -> {
-                    // Clear existing ANSI-related fold regions
-                    for (FoldRegion region : foldingModel.getAllFoldRegions()) {
-                        if (region != null && (region.getPlaceholderText().isEmpty() || region.getPlaceholderText().equals(""))) {
-                            foldingModel.removeFoldRegion(region);
-                        }
-                    }
-                    
-                    // Add new folds for all ANSI codes with invisible placeholder
-                    Matcher m = AnsiPatternUtil.ANSI_PATTERN.matcher(text);
-                    while (m.find()) {
-                        try {
-                            FoldRegion region = foldingModel.addFoldRegion(m.start(), m.end(), "");
-                            if (region != null) {
-                                region.setExpanded(false);
-                            }
-                        } catch (Exception e) {
-                            // Ignore fold creation errors
-                        }
-                    }
-                });
-            }
-        } else {
-            // When not hiding, remove all ANSI folding regions
-            FoldingModel foldingModel = ((EditorEx) editor).getFoldingModel();
-            if (foldingModel != null) {
-                foldingModel.runBatchFoldingOperation(() -> {
-                    for (FoldRegion region : foldingModel.getAllFoldRegions()) {
-                        if (region != null && region.getPlaceholderText().isEmpty()) {
-                            foldingModel.removeFoldRegion(region);
-                        }
-                    }
-                });
-            }
-        }
+    @Override
+    public void selectionChanged(@NotNull FileEditorManagerEvent event) {
+        if (!(event.getNewEditor() instanceof TextEditor)) return;
+        Editor editor = ((TextEditor) event.getNewEditor()).getEditor();
+        AnsiRenderModelService service = AnsiRenderModelService.getInstance(event.getManager().getProject());
+        AnsiRenderModel model = service.getModel(editor.getDocument());
+        if (model == null) return;
+        model.show();
+        // The previous tab is hidden only once the selection has been painted
+        ApplicationManager.getApplication().invokeLater(AnsiMarkupBudget.getInstance()::enforce, event.getManager().getProject().getDisposed());
+    }
 
-        Matcher matcher = AnsiPatternUtil.ANSI_PATTERN.matcher(text);
-        int lastIndex = 0;
-        TextAttributes current = new TextAttributes();
-        while (matcher.find()) {
-            int escStart = matcher.start();
-            if (escStart > lastIndex) {
-                addHighlighter(markup, lastIndex, escStart, current);
-            }
-            String seq = matcher.group();
-            applySequenceToAttributes(seq, current);
-            lastIndex = matcher.end();
-        }
-        if (lastIndex < text.length()) {
-            addHighlighter(markup, lastIndex, text.length(), current);
-        }
+    /** Receives the style runs found by {@link #parseLine}. */
+    @FunctionalInterface
+    interface StyleRunSink {
+        void addRun(int start, int end, long style);
     }
 
-    private void addHighlighter(MarkupModel markup, int start, int end, TextAttributes attrs) {
-        if (start >= end) return;
-        TextAttributes copy = attrs.clone();
-        markup.addRangeHighlighter(start, end, HighlighterLayer.ADDITIONAL_SYNTAX, copy, HighlighterTargetArea.EXACT_RANGE);
+    /** Highlights one line starting in the given style and returns the style in effect at its end. */
+    static long highlightLine(MarkupModel markup, AnsiSgrLexer lexer, CharSequence text, int lineStart, int lineEnd,
+                              long style, IntArrayList escapes) {
+        return parseLine(lexer, text, lineStart, lineEnd, style, (start, end, runStyle) -> addHighlighter(markup, start, end, runStyle), escapes);
     }
 
-    private void applySequenceToAttributes(String esc, TextAttributes attrs) {
-        int lb = esc.indexOf('[');
-        int m = esc.indexOf('m');
-        if (lb < 0 || m < 0) return;
-        String codesStr = esc.substring(lb + 1, m);
-        if (codesStr.isEmpty()) codesStr = "0";
-        String[] codes = codesStr.split(";");
-        for (int i = 0; i < codes.length; i++) {
-            int c;
-            try { c = Integer.parseInt(codes[i]); } catch (NumberFormatException e) { continue; }
-            if (c == 0) { reset(attrs); }
-            else if (c == 1) { attrs.setFontType(Font.BOLD); }
-            else if (c == 3) { attrs.setFontType(Font.ITALIC); }
-            else if (c == 4) { attrs.setEffectType(EffectType.LINE_UNDERSCORE); }
-            else if (30 <= c && c <= 37) { attrs.setForegroundColor(ansiColor(c - 30, false)); }
-            else if (90 <= c && c <= 97) { attrs.setForegroundColor(ansiColor(c - 90, true)); }
-            else if (40 <= c && c <= 47) { attrs.setBackgroundColor(ansiColor(c - 40, false)); }
-            else if (100 <= c && c <= 107) { attrs.setBackgroundColor(ansiColor(c - 100, true)); }
-            // 256-color & truecolor sequences
-            else if (c == 38 || c == 48) { // foreground/background extended
-                boolean fg = (c == 38);
-                if (i + 1 < codes.length) {
-                    if ("5".equals(codes[i + 1]) && i + 2 < codes.length) { // 256 color
-                        try {
-                            int idx = Integer.parseInt(codes[i + 2]);
-                            Color col = ansi256(idx);
-                            if (fg) attrs.setForegroundColor(col); else attrs.setBackgroundColor(col);
-                        } catch (NumberFormatException ignored) {}
-                        i += 2;
-                    } else if ("2".equals(codes[i + 1]) && i + 4 < codes.length) { // truecolor r;g;b
-                        try {
-                            int r = Integer.parseInt(codes[i + 2]);
-                            int g = Integer.parseInt(codes[i + 3]);
-                            int b = Integer.parseInt(codes[i + 4]);
-                            Color col = new Color(r, g, b);
-                            if (fg) attrs.setForegroundColor(col); else attrs.setBackgroundColor(col);
-                        } catch (NumberFormatException ignored) {}
-                        i += 4;
-                    }
+    /**
+     * Parses one line starting in the given style and returns the style in effect at its end.
+     * Adjacent segments of the same style are merged into one run across the escapes between them.
+     * Only the part {@link AnsiTerminalLine} finds visible, up to the {@link LongLineGuard} cutoff, is
+     * styled; the text overwritten by carriage returns and cursor moves is reported as one hidden range
+     * on each side, and elsewhere only the style is tracked.
+     */
+    static long parseLine(AnsiSgrLexer lexer, CharSequence text, int lineStart, int lineEnd,
+                          long style, StyleRunSink sink, IntArrayList escapes) {
+        int cutoff = LongLineGuard.cutoff(lineStart, lineEnd);
+        long visible = AnsiTerminalLine.collapse(text, lineStart, cutoff);
+        int lo = visible == AnsiTerminalLine.NONE ? lineStart : AnsiTerminalLine.visibleStart(visible);
+        int hi = visible == AnsiTerminalLine.NONE ? cutoff : AnsiTerminalLine.visibleEnd(visible);
+        if (escapes != null && lo > lineStart) {
+            escapes.add(lineStart);
+            escapes.add(lo);
+        }
+        lexer.reset(text, lineStart, lineEnd);
+        int runStart = -1;
+        int runEnd = -1;
+        int lastIndex = lo;
+        boolean tail = false;
+        while (lexer.next()) {
+            int escStart = lexer.getStart();
+            if (lexer.getEnd() <= lo) {
+                style = AnsiStyle.apply(style, lexer.getParams(), lexer.getParamCount());
+                continue;
+            }
+            if (!tail && lexer.getEnd() > hi) {
+                // The hidden or folded rest gets neither runs nor escape folds
+                int segmentEnd = Math.min(escStart, hi);
+                if (segmentEnd > lastIndex) {
+                    if (runStart < 0) runStart = lastIndex;
+                    runEnd = segmentEnd;
                 }
+                if (runStart >= 0) sink.addRun(runStart, runEnd, style);
+                runStart = -1;
+                tail = true;
+            }
+            if (tail) {
+                style = AnsiStyle.apply(style, lexer.getParams(), lexer.getParamCount());
+                continue;
+            }
+            if (escStart > lastIndex) {
+                if (runStart < 0) runStart = lastIndex;
+                runEnd = escStart;
             }
+            long next = AnsiStyle.apply(style, lexer.getParams(), lexer.getParamCount());
+            if (next != style) {
+                if (runStart >= 0) sink.addRun(runStart, runEnd, style);
+                runStart = -1;
+                style = next;
+            }
+            lastIndex = lexer.getEnd();
+            if (escapes != null) {
+                escapes.add(escStart);
+                escapes.add(lastIndex);
+            }
+        }
+        if (!tail && lastIndex < hi) {
+            if (runStart < 0) runStart = lastIndex;
+            runEnd = hi;
         }
+        if (runStart >= 0) sink.addRun(runStart, runEnd, style);
+        if (escapes != null && hi < cutoff) {
+            escapes.add(hi);
+            escapes.add(cutoff);
+        }
+        return style;
     }
 
-    private Color ansi256(int idx) {
-        if (idx < 0) idx = 0; if (idx > 255) idx = 255;
-        if (idx < 16) { // basic + bright
-            boolean bright = idx > 7;
-            int base = idx % 8;
-            return ansiColor(base, bright);
-        }
-        if (idx >= 16 && idx <= 231) { // 6x6x6 cube
-            int cube = idx - 16;
-            int r = (cube / 36) % 6;
-            int g = (cube / 6) % 6;
-            int b = cube % 6;
-            int conv = 55; // base offset except 0
-            int cr = r == 0 ? 0 : conv + (r - 1) * 40;
-            int cg = g == 0 ? 0 : conv + (g - 1) * 40;
-            int cb = b == 0 ? 0 : conv + (b - 1) * 40;
-            return new Color(cr, cg, cb);
+    static void removeAnsiHighlighters(MarkupModel markup, int start, int end) {
+        if (!(markup instanceof MarkupModelEx)) return;
+        List<RangeHighlighter> stale = new ArrayList<>();
+        ((MarkupModelEx) markup).processRangeHighlightersOverlappingWith(start, end, h -> {
+            if (h.getUserData(ANSI_HIGHLIGHTER) != null) stale.add(h);
+            return true;
+        });
+        for (RangeHighlighter h : stale) {
+            markup.removeHighlighter(h);
         }
-        // grayscale 232-255
-        int gray = 8 + (idx - 232) * 10;
-        return new Color(gray, gray, gray);
     }
 
-    private void reset(TextAttributes attrs) {
-        attrs.setForegroundColor(null);
-        attrs.setBackgroundColor(null);
-        attrs.setFontType(Font.PLAIN);
-        attrs.setEffectType(null);
-        attrs.setEffectColor(null);
+    /**
+     * Replaces the escape folds starting in {@code [start, end)} with folds for {@code escapes}, if codes
+     * are hidden, and refreshes the tail folds of long lines in the range.
+     */
+    static void updateFolds(Editor editor, int start, int end, IntArrayList escapes) {
+        boolean hideAnsiCodes = AnsiLogSettingsState.getInstance().isHideAnsiCodes();
+        AnsiFoldTracker.getInstance(editor).sync(editor, start, end, hideAnsiCodes ? escapes : new IntArrayList());
+        LongLineGuard.sync(editor, start, end);
     }
 
-    private Color ansiColor(int idx, boolean bright) {
-        Color[] base = new Color[]{
-                new Color(0,0,0),
-                new Color(128,0,0),
-                new Color(0,128,0),
-                new Color(128,128,0),
-                new Color(0,0,128),
-                new Color(128,0,128),
-                new Color(0,128,128),
-                new Color(192,192,192)
-        };
-        Color c = base[Math.max(0, Math.min(idx, base.length-1))];
-        if (!bright) return c;
-        return new Color(Math.min(255, c.getRed() + 80), Math.min(255, c.getGreen() + 80), Math.min(255, c.getBlue() + 80));
+    static void addHighlighter(MarkupModel markup, int start, int end, long style) {
+        TextAttributes attrs = AnsiTextAttributesCache.getInstance().get(style);
+        if (start >= end || attrs == null) return;
+        RangeHighlighter highlighter = markup.addRangeHighlighter(start, end, HighlighterLayer.ADDITIONAL_SYNTAX, attrs, HighlighterTargetArea.EXACT_RANGE);
+        highlighter.putUserData(ANSI_HIGHLIGHTER, style);
     }
 
-    private void attachLiveUpdate(Editor editor) {
-        Document doc = editor.getDocument();
-        if (alarms.containsKey(doc)) return;
-        Alarm alarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD);
-        alarms.put(doc, alarm);
-        
-        DocumentListener listener = new DocumentListener() {
-            @Override
-            public void documentChanged(@NotNull DocumentEvent event) {
-                if (doc.getTextLength() > 5_000_000) return;
-                alarm.cancelAllRequests();
-                alarm.addRequest(() -> {
-                    if (editor.isDisposed()) return;
-                    applyAnsiHighlighting(editor);
-                }, DEBOUNCE_MS);
-            }
-        };
-        
-        Disposable disposable = new Disposable() {
-            @Override
-            public void dispose() {
-                // Cleanup handled by weak references and Alarm
+    /**
+     * Reads back the style runs of our highlighters in offset order and returns their number.
+     * Runs are only collected if {@code runs} and {@code runStyles} are given.
+     */
+    static int collectRuns(MarkupModel markup, int end, @Nullable IntArrayList runs, @Nullable LongArrayList runStyles) {
+        if (!(markup instanceof MarkupModelEx)) return 0;
+        int[] count = new int[1];
+        ((MarkupModelEx) markup).processRangeHighlightersOverlappingWith(0, end, h -> {
+            Long style = h.getUserData(ANSI_HIGHLIGHTER);
+            if (style == null || !h.isValid()) return true;
+            count[0]++;
+            if (runs != null && runStyles != null) {
+                runs.add(h.getStartOffset());
+                runs.add(h.getEndOffset());
+                runStyles.add(style.longValue());
             }
-        };
-        
-        doc.addDocumentListener(listener, disposable);
-        Disposer.register(editor.getProject() != null ? editor.getProject() : (Disposable) () -> {}, disposable);
+            return true;
+        });
+        return count[0];
     }
 }
@@ -17,6 +17,15 @@ public class AnsiLogSettingsConfigurable implements Configurable {
     private JCheckBox hideAnsiCodesCheckbox;
     private JCheckBox showOnCursorCheckbox;
     private JCheckBox darkThemeCheckbox;
+    private JCheckBox adjustContrastCheckbox;
+    private JCheckBox collapseControlsCheckbox;
+    private JComboBox<AnsiLogSettingsState.RenderingBackend> backendCombo;
+    private JSpinner markupBudgetSpinner;
+    private JSpinner longLineSpinner;
+    private JSpinner targetSyncSpinner;
+    private JSpinner targetEditSpinner;
+    private JSpinner targetScrollSpinner;
+    private JSpinner targetFullPassSpinner;
 
     @Override public @Nls(capitalization = Nls.Capitalization.Title) String getDisplayName() { return "ANSI Log Viewer"; }
 
@@ -69,9 +78,79 @@ public class AnsiLogSettingsConfigurable implements Configurable {
             AnsiLogSettingsState.getInstance().isDarkTheme());
         darkThemeCheckbox.setToolTipText("Optimize colors for dark IDE background");
         displayPanel.add(darkThemeCheckbox);
+        displayPanel.add(Box.createVerticalStrut(8));
+
+        adjustContrastCheckbox = new JCheckBox("Adjust colors for contrast with the editor background",
+            AnsiLogSettingsState.getInstance().isAdjustContrast());
+        adjustContrastCheckbox.setToolTipText("Lightens or darkens palette colors that would be hard to read in the current color scheme");
+        displayPanel.add(adjustContrastCheckbox);
+        displayPanel.add(Box.createVerticalStrut(8));
+
+        collapseControlsCheckbox = new JCheckBox("Collapse progress output (carriage returns, erase line, cursor moves)",
+            AnsiLogSettingsState.getInstance().isCollapseTerminalControls());
+        collapseControlsCheckbox.setToolTipText("Shows only the final state of lines that redraw themselves; the overwritten text is hidden with the ANSI codes");
+        displayPanel.add(collapseControlsCheckbox);
         
         mainPanel.add(displayPanel);
         mainPanel.add(Box.createVerticalStrut(15));
+
+        // Performance Settings Panel
+        JPanel performancePanel = new JPanel();
+        performancePanel.setLayout(new BoxLayout(performancePanel, BoxLayout.Y_AXIS));
+        performancePanel.setBorder(new TitledBorder("Performance"));
+
+        JPanel backendRow = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        backendRow.add(new JLabel("Rendering backend: "));
+        backendCombo = new JComboBox<>(AnsiLogSettingsState.RenderingBackend.values());
+        backendCombo.setSelectedItem(AnsiLogSettingsState.getInstance().getRenderingBackend());
+        backendCombo.setToolTipText("MARKUP: one range highlighter per style run. LEXER: editor highlighter with incremental re-lexing. Applies to newly opened files");
+        backendRow.add(backendCombo);
+        backendRow.setAlignmentX(Component.LEFT_ALIGNMENT);
+        performancePanel.add(backendRow);
+        performancePanel.add(Box.createVerticalStrut(8));
+
+        JPanel budgetRow = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        budgetRow.add(new JLabel("Keep at most "));
+        markupBudgetSpinner = new JSpinner(new SpinnerNumberModel(
+            AnsiLogSettingsState.getInstance().getMarkupBudget(), 10_000, 100_000_000, 100_000));
+        markupBudgetSpinner.setToolTipText("Highlighters and folds of logs in hidden tabs are released beyond this total and rebuilt when shown again");
+        budgetRow.add(markupBudgetSpinner);
+        budgetRow.add(new JLabel(" highlighters and folds across open logs in all projects"));
+        budgetRow.setAlignmentX(Component.LEFT_ALIGNMENT);
+        performancePanel.add(budgetRow);
+        performancePanel.add(Box.createVerticalStrut(8));
+
+        JPanel longLineRow = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        longLineRow.add(new JLabel("Fold lines longer than "));
+        longLineSpinner = new JSpinner(new SpinnerNumberModel(
+            AnsiLogSettingsState.getInstance().getLongLineThreshold(), LongLineGuard.MIN_THRESHOLD, 10_000_000, 1000));
+        longLineSpinner.setToolTipText("Colors stop at this length; the rest of the line is folded and can be expanded from the editor menu");
+        longLineRow.add(longLineSpinner);
+        longLineRow.add(new JLabel(" characters"));
+        longLineRow.setAlignmentX(Component.LEFT_ALIGNMENT);
+        performancePanel.add(longLineRow);
+        performancePanel.add(Box.createVerticalStrut(8));
+
+        JLabel targetsLabel = new JLabel("Target latencies (strategies are chosen from measured speed):");
+        targetsLabel.setFont(targetsLabel.getFont().deriveFont(Font.PLAIN));
+        targetsLabel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        performancePanel.add(targetsLabel);
+        performancePanel.add(Box.createVerticalStrut(5));
+        targetSyncSpinner = addTargetRow(performancePanel, "Block the UI at most ",
+            AnsiLogSettingsState.getInstance().getTargetSyncMs(), 10, " ms when coloring a log at once",
+            "Logs expected to take longer are colored in the background");
+        targetEditSpinner = addTargetRow(performancePanel, "Update colors within ",
+            AnsiLogSettingsState.getInstance().getTargetEditMs(), 50, " ms of an edit",
+            "Bounds the delay before changed lines are parsed again");
+        targetScrollSpinner = addTargetRow(performancePanel, "Render the visible area within ",
+            AnsiLogSettingsState.getInstance().getTargetScrollMs(), 10, " ms in lazy mode",
+            "A log whose visible area repeatedly takes longer is shown without colors");
+        targetFullPassSpinner = addTargetRow(performancePanel, "Color whole logs taking under ",
+            AnsiLogSettingsState.getInstance().getTargetFullPassMs(), 100, " ms, others lazily",
+            "Larger logs are colored only around the visible lines");
+
+        mainPanel.add(performancePanel);
+        mainPanel.add(Box.createVerticalStrut(15));
         
         // Info panel
         JPanel infoPanel = new JPanel();
@@ -94,6 +173,19 @@ public class AnsiLogSettingsConfigurable implements Configurable {
         return mainPanel;
     }
 
+    private static JSpinner addTargetRow(JPanel panel, String before, int value, int min, String after, String tooltip) {
+        JPanel row = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        row.add(new JLabel(before));
+        JSpinner spinner = new JSpinner(new SpinnerNumberModel(value, min, 600_000, 10));
+        spinner.setToolTipText(tooltip);
+        row.add(spinner);
+        row.add(new JLabel(after));
+        row.setAlignmentX(Component.LEFT_ALIGNMENT);
+        panel.add(row);
+        panel.add(Box.createVerticalStrut(5));
+        return spinner;
+    }
+
     @Override public boolean isModified() {
         List<String> current = AnsiLogSettingsState.getInstance().getExtensions();
         List<String> entered = parse();
@@ -101,7 +193,17 @@ public class AnsiLogSettingsConfigurable implements Configurable {
         boolean hideChanged = AnsiLogSettingsState.getInstance().isHideAnsiCodes() != hideAnsiCodesCheckbox.isSelected();
         boolean cursorChanged = AnsiLogSettingsState.getInstance().isShowAnsiCodesOnCursor() != showOnCursorCheckbox.isSelected();
         boolean themeChanged = AnsiLogSettingsState.getInstance().isDarkTheme() != darkThemeCheckbox.isSelected();
-        return extChanged || hideChanged || cursorChanged || themeChanged;
+        boolean contrastChanged = AnsiLogSettingsState.getInstance().isAdjustContrast() != adjustContrastCheckbox.isSelected();
+        boolean collapseChanged = AnsiLogSettingsState.getInstance().isCollapseTerminalControls() != collapseControlsCheckbox.isSelected();
+        boolean backendChanged = AnsiLogSettingsState.getInstance().getRenderingBackend() != backendCombo.getSelectedItem();
+        boolean budgetChanged = AnsiLogSettingsState.getInstance().getMarkupBudget() != (Integer) markupBudgetSpinner.getValue();
+        boolean longLineChanged = AnsiLogSettingsState.getInstance().getLongLineThreshold() != (Integer) longLineSpinner.getValue();
+        boolean targetsChanged = AnsiLogSettingsState.getInstance().getTargetSyncMs() != (Integer) targetSyncSpinner.getValue()
+                || AnsiLogSettingsState.getInstance().getTargetEditMs() != (Integer) targetEditSpinner.getValue()
+                || AnsiLogSettingsState.getInstance().getTargetScrollMs() != (Integer) targetScrollSpinner.getValue()
+                || AnsiLogSettingsState.getInstance().getTargetFullPassMs() != (Integer) targetFullPassSpinner.getValue();
+        return extChanged || hideChanged || cursorChanged || themeChanged || contrastChanged || collapseChanged || backendChanged || budgetChanged
+                || longLineChanged || targetsChanged;
     }
 
     private List<String> parse() {
@@ -113,10 +215,23 @@ public class AnsiLogSettingsConfigurable implements Configurable {
     }
 
     @Override public void apply() throws ConfigurationException { 
+        boolean paletteChanged = AnsiLogSettingsState.getInstance().isDarkTheme() != darkThemeCheckbox.isSelected()
+                || AnsiLogSettingsState.getInstance().isAdjustContrast() != adjustContrastCheckbox.isSelected();
         AnsiLogSettingsState.getInstance().setExtensions(parse());
         AnsiLogSettingsState.getInstance().setHideAnsiCodes(hideAnsiCodesCheckbox.isSelected());
         AnsiLogSettingsState.getInstance().setShowAnsiCodesOnCursor(showOnCursorCheckbox.isSelected());
         AnsiLogSettingsState.getInstance().setDarkTheme(darkThemeCheckbox.isSelected());
+        AnsiLogSettingsState.getInstance().setAdjustContrast(adjustContrastCheckbox.isSelected());
+        AnsiLogSettingsState.getInstance().setCollapseTerminalControls(collapseControlsCheckbox.isSelected());
+        AnsiLogSettingsState.getInstance().setRenderingBackend((AnsiLogSettingsState.RenderingBackend) backendCombo.getSelectedItem());
+        AnsiLogSettingsState.getInstance().setMarkupBudget((Integer) markupBudgetSpinner.getValue());
+        AnsiLogSettingsState.getInstance().setLongLineThreshold((Integer) longLineSpinner.getValue());
+        AnsiLogSettingsState.getInstance().setTargetSyncMs((Integer) targetSyncSpinner.getValue());
+        AnsiLogSettingsState.getInstance().setTargetEditMs((Integer) targetEditSpinner.getValue());
+        AnsiLogSettingsState.getInstance().setTargetScrollMs((Integer) targetScrollSpinner.getValue());
+        AnsiLogSettingsState.getInstance().setTargetFullPassMs((Integer) targetFullPassSpinner.getValue());
+        // Shared attributes are recolored in place; open logs are not parsed again
+        if (paletteChanged) AnsiPalette.apply();
     }
 
     @Override public void reset() { 
@@ -124,6 +239,15 @@ public class AnsiLogSettingsConfigurable implements Configurable {
         hideAnsiCodesCheckbox.setSelected(AnsiLogSettingsState.getInstance().isHideAnsiCodes());
         showOnCursorCheckbox.setSelected(AnsiLogSettingsState.getInstance().isShowAnsiCodesOnCursor());
         darkThemeCheckbox.setSelected(AnsiLogSettingsState.getInstance().isDarkTheme());
+        adjustContrastCheckbox.setSelected(AnsiLogSettingsState.getInstance().isAdjustContrast());
+        collapseControlsCheckbox.setSelected(AnsiLogSettingsState.getInstance().isCollapseTerminalControls());
+        backendCombo.setSelectedItem(AnsiLogSettingsState.getInstance().getRenderingBackend());
+        markupBudgetSpinner.setValue(AnsiLogSettingsState.getInstance().getMarkupBudget());
+        longLineSpinner.setValue(AnsiLogSettingsState.getInstance().getLongLineThreshold());
+        targetSyncSpinner.setValue(AnsiLogSettingsState.getInstance().getTargetSyncMs());
+        targetEditSpinner.setValue(AnsiLogSettingsState.getInstance().getTargetEditMs());
+        targetScrollSpinner.setValue(AnsiLogSettingsState.getInstance().getTargetScrollMs());
+        targetFullPassSpinner.setValue(AnsiLogSettingsState.getInstance().getTargetFullPassMs());
     }
 
     @Override public void disposeUIResources() { 
@@ -131,5 +255,14 @@ public class AnsiLogSettingsConfigurable implements Configurable {
         hideAnsiCodesCheckbox = null;
         showOnCursorCheckbox = null;
         darkThemeCheckbox = null;
+        adjustContrastCheckbox = null;
+        collapseControlsCheckbox = null;
+        backendCombo = null;
+        markupBudgetSpinner = null;
+        longLineSpinner = null;
+        targetSyncSpinner = null;
+        targetEditSpinner = null;
+        targetScrollSpinner = null;
+        targetFullPassSpinner = null;
     }
 }
@@ -13,11 +13,23 @@ import java.util.List;
 @Service(Service.Level.APP)
 @State(name = "AnsiLogSettingsState", storages = @Storage("ansi-log-viewer.xml"))
 public final class AnsiLogSettingsState implements PersistentStateComponent<AnsiLogSettingsState.State> {
+    /** How ANSI colors are drawn: one range highlighter per style run, or a lexer-based editor highlighter. */
+    public enum RenderingBackend { MARKUP, LEXER }
+
     public static class State { 
         public List<String> extensions = new ArrayList<>();
         public boolean hideAnsiCodes = true;
         public boolean showAnsiCodesOnCursor = true;
         public boolean darkTheme = true;
+        public String renderingBackend = RenderingBackend.MARKUP.name();
+        public int markupBudget = 2_000_000;
+        public int longLineThreshold = 10_000;
+        public boolean collapseTerminalControls = true;
+        public boolean adjustContrast = false;
+        public int targetSyncMs = 100;
+        public int targetEditMs = 200;
+        public int targetScrollMs = 100;
+        public int targetFullPassMs = 10_000;
     }
     private State state = new State();
 
@@ -41,6 +53,52 @@ public final class AnsiLogSettingsState implements PersistentStateComponent<Ansi
     
     public void setDarkTheme(boolean dark) { state.darkTheme = dark; }
 
+    /** Whether palette colors are lightened or darkened until readable on the editor background. */
+    public boolean isAdjustContrast() { return state.adjustContrast; }
+
+    public void setAdjustContrast(boolean adjust) { state.adjustContrast = adjust; }
+
+    public RenderingBackend getRenderingBackend() {
+        try { return RenderingBackend.valueOf(state.renderingBackend); } catch (RuntimeException e) { return RenderingBackend.MARKUP; }
+    }
+
+    public void setRenderingBackend(RenderingBackend backend) { state.renderingBackend = backend.name(); }
+
+    /** Highlighters and folds kept across all open logs before hidden ones are dropped. */
+    public int getMarkupBudget() { return Math.max(10_000, state.markupBudget); }
+
+    public void setMarkupBudget(int budget) { state.markupBudget = budget; }
+
+    /** Lines longer than this are styled up to this length and the rest is folded. */
+    public int getLongLineThreshold() { return Math.max(LongLineGuard.MIN_THRESHOLD, state.longLineThreshold); }
+
+    public void setLongLineThreshold(int length) { state.longLineThreshold = length; }
+
+    /** Whether text overwritten by carriage returns and cursor moves is hidden with the escape codes. */
+    public boolean isCollapseTerminalControls() { return state.collapseTerminalControls; }
+
+    public void setCollapseTerminalControls(boolean collapse) { state.collapseTerminalControls = collapse; }
+
+    /** Longest the UI may block to color a document in one go; longer passes run in the background. */
+    public int getTargetSyncMs() { return Math.max(10, state.targetSyncMs); }
+
+    public void setTargetSyncMs(int ms) { state.targetSyncMs = ms; }
+
+    /** How soon colors should follow an edit. */
+    public int getTargetEditMs() { return Math.max(50, state.targetEditMs); }
+
+    public void setTargetEditMs(int ms) { state.targetEditMs = ms; }
+
+    /** Longest a lazy-mode refresh may take before a log is left plain. */
+    public int getTargetScrollMs() { return Math.max(10, state.targetScrollMs); }
+
+    public void setTargetScrollMs(int ms) { state.targetScrollMs = ms; }
+
+    /** Longest a full background pass may take; logs expected to take longer are colored lazily. */
+    public int getTargetFullPassMs() { return Math.max(100, state.targetFullPassMs); }
+
+    public void setTargetFullPassMs(int ms) { state.targetFullPassMs = ms; }
+
     @Override public @Nullable State getState() { return state; }
     @Override public void loadState(@NotNull State state) { this.state = state; if (this.state.extensions.isEmpty()) this.state.extensions.add("log"); }
 }
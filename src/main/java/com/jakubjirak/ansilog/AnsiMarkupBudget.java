@@ -0,0 +1,66 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Keeps the highlighters and folds of all render models, in all open projects, under
+ * {@link AnsiLogSettingsState#getMarkupBudget()}. Each project's {@link AnsiRenderModelService} registers
+ * its models here; once the budget is exceeded, models with no editor on screen are dropped, least
+ * recently shown first, whichever project they belong to. Accessed on the EDT only.
+ */
+@Service(Service.Level.APP)
+public final class AnsiMarkupBudget {
+    private final Set<AnsiRenderModel> models = new LinkedHashSet<>();
+
+    public static @NotNull AnsiMarkupBudget getInstance() {
+        return ApplicationManager.getApplication().getService(AnsiMarkupBudget.class);
+    }
+
+    /** Counts the model against the budget until it is disposed. */
+    void register(@NotNull AnsiRenderModel model) {
+        if (models.add(model)) Disposer.register(model, () -> models.remove(model));
+    }
+
+    /** Highlighters and folds currently held by all models. */
+    public long getUsage() {
+        long usage = 0;
+        for (AnsiRenderModel model : models) usage += model.getMarkupSize();
+        return usage;
+    }
+
+    public int getModelCount() {
+        return models.size();
+    }
+
+    public int getDroppedCount() {
+        int count = 0;
+        for (AnsiRenderModel model : models) {
+            if (model.isDropped()) count++;
+        }
+        return count;
+    }
+
+    /** Drops hidden models, least recently shown first, until the usage fits the budget. */
+    void enforce() {
+        long budget = AnsiLogSettingsState.getInstance().getMarkupBudget();
+        long usage = getUsage();
+        if (usage <= budget) return;
+        List<AnsiRenderModel> candidates = new ArrayList<>(models);
+        candidates.sort(Comparator.comparingLong(AnsiRenderModel::getLastShown));
+        for (AnsiRenderModel model : candidates) {
+            if (usage <= budget) break;
+            if (model.isDropped() || model.isVisible()) continue;
+            usage -= model.getMarkupSize();
+            model.drop();
+        }
+    }
+}
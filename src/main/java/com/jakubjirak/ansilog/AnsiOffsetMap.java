@@ -0,0 +1,75 @@
+package com.jakubjirak.ansilog;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Translates offsets between a raw document and its ANSI-stripped projection.
+ * For every removed escape it stores the clean offset where the escape was and the total number
+ * of characters removed up to and including it, so both directions are a binary search.
+ */
+public final class AnsiOffsetMap {
+    private final int[] cleanOffsets;
+    private final int[] removedTotals;
+
+    private AnsiOffsetMap(int[] cleanOffsets, int[] removedTotals) {
+        this.cleanOffsets = cleanOffsets;
+        this.removedTotals = removedTotals;
+    }
+
+    /** Offset in the raw text of the character at {@code cleanOffset}; a position just after escapes maps past them. */
+    public int toRaw(int cleanOffset) {
+        int i = lastAtOrBefore(cleanOffsets, cleanOffset);
+        return cleanOffset + (i < 0 ? 0 : removedTotals[i]);
+    }
+
+    /** Offset in the clean text; offsets inside an escape map to where the escape was removed. */
+    public int toClean(int rawOffset) {
+        int lo = 0;
+        int hi = cleanOffsets.length;
+        // Raw start of escape i is cleanOffsets[i] + removedTotals[i - 1]
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (rawStart(mid) <= rawOffset) lo = mid + 1; else hi = mid;
+        }
+        int i = lo - 1;
+        if (i < 0) return rawOffset;
+        int rawEnd = cleanOffsets[i] + removedTotals[i];
+        return rawOffset < rawEnd ? cleanOffsets[i] : rawOffset - removedTotals[i];
+    }
+
+    public int getEscapeCount() {
+        return cleanOffsets.length;
+    }
+
+    private int rawStart(int i) {
+        return cleanOffsets[i] + (i > 0 ? removedTotals[i - 1] : 0);
+    }
+
+    private static int lastAtOrBefore(int[] sorted, int value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= value) lo = mid + 1; else hi = mid;
+        }
+        return lo - 1;
+    }
+
+    /** Collects escapes in raw-offset order while the clean text is being written. */
+    static final class Builder {
+        private final IntArrayList cleanOffsets = new IntArrayList();
+        private final IntArrayList removedTotals = new IntArrayList();
+        private int removed;
+
+        void addEscape(int cleanOffset, int length) {
+            removed += length;
+            cleanOffsets.add(cleanOffset);
+            removedTotals.add(removed);
+        }
+
+        @NotNull AnsiOffsetMap build() {
+            return new AnsiOffsetMap(cleanOffsets.toIntArray(), removedTotals.toIntArray());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.colors.EditorColorsManager;
+import com.intellij.openapi.editor.colors.EditorColorsScheme;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.Color;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed 256-color lookup tables as 0xRRGGBB. Styles keep palette indices, so changing the table
+ * only recolors the shared attributes in {@link AnsiTextAttributesCache}; no document is parsed again.
+ * There is one base table for dark and one for light backgrounds. With contrast adjustment on, the
+ * foreground table is additionally fitted to the background of each color scheme and cached by name.
+ */
+final class AnsiPalette {
+    /** Minimum contrast ratio of adjusted foreground colors against the editor background. */
+    private static final double MIN_CONTRAST = 3.0;
+
+    static final int[] DARK = build(
+            new int[]{0x000000, 0x800000, 0x008000, 0x808000, 0x000080, 0x800080, 0x008080, 0xC0C0C0},
+            new int[]{0x505050, 0xD05050, 0x50D050, 0xD0D050, 0x5050D0, 0xD050D0, 0x50D0D0, 0xFFFFFF});
+    static final int[] LIGHT = build(
+            new int[]{0x000000, 0xA00000, 0x007000, 0x806000, 0x0000A0, 0x800080, 0x007070, 0x808080},
+            new int[]{0x505050, 0xD00000, 0x00A000, 0xA08000, 0x0000E0, 0xB000B0, 0x009090, 0x404040});
+
+    private static final Map<String, int[]> adjusted = new ConcurrentHashMap<>();
+
+    private AnsiPalette() {}
+
+    /** Table for background colors: the base table of the current theme setting. */
+    static int @NotNull [] background() {
+        return AnsiLogSettingsState.getInstance().isDarkTheme() ? DARK : LIGHT;
+    }
+
+    /** Table for foreground colors, fitted to the global scheme if contrast adjustment is on. */
+    static int @NotNull [] foreground() {
+        int[] base = background();
+        if (!AnsiLogSettingsState.getInstance().isAdjustContrast()) return base;
+        EditorColorsScheme scheme = EditorColorsManager.getInstance().getGlobalScheme();
+        Color editorBackground = scheme.getDefaultBackground();
+        String key = scheme.getName() + (base == DARK ? "/dark/" : "/light/") + editorBackground.getRGB();
+        return adjusted.computeIfAbsent(key, k -> adjust(base, editorBackground.getRGB() & 0xFFFFFF));
+    }
+
+    /** Recolors all cached attributes for the current settings and scheme, then repaints the editors. */
+    static void apply() {
+        AnsiTextAttributesCache.getInstance().setPalette(foreground(), background());
+        for (Editor editor : EditorFactory.getInstance().getAllEditors()) {
+            editor.getContentComponent().repaint();
+        }
+    }
+
+    private static int[] build(int[] base, int[] bright) {
+        int[] palette = new int[256];
+        System.arraycopy(base, 0, palette, 0, 8);
+        System.arraycopy(bright, 0, palette, 8, 8);
+        for (int i = 16; i < 232; i++) { // 6x6x6 cube
+            int cube = i - 16;
+            palette[i] = (cubeLevel(cube / 36) << 16) | (cubeLevel((cube / 6) % 6) << 8) | cubeLevel(cube % 6);
+        }
+        for (int i = 232; i < 256; i++) { // grayscale
+            int gray = 8 + (i - 232) * 10;
+            palette[i] = (gray << 16) | (gray << 8) | gray;
+        }
+        return palette;
+    }
+
+    private static int cubeLevel(int level) {
+        return level == 0 ? 0 : 55 + (level - 1) * 40;
+    }
+
+    /** Moves each color towards white or black, whichever contrasts with the background, until readable. */
+    private static int[] adjust(int[] base, int background) {
+        double backgroundLuminance = luminance(background);
+        int target = contrast(1.0, backgroundLuminance) > contrast(0.0, backgroundLuminance) ? 0xFFFFFF : 0x000000;
+        int[] palette = new int[base.length];
+        for (int i = 0; i < base.length; i++) {
+            int color = base[i];
+            for (int step = 1; step <= 10 && contrast(luminance(color), backgroundLuminance) < MIN_CONTRAST; step++) {
+                color = blend(base[i], target, step / 10.0);
+            }
+            palette[i] = color;
+        }
+        return palette;
+    }
+
+    private static int blend(int from, int to, double amount) {
+        int r = (int) Math.round(((from >> 16) & 0xFF) * (1 - amount) + ((to >> 16) & 0xFF) * amount);
+        int g = (int) Math.round(((from >> 8) & 0xFF) * (1 - amount) + ((to >> 8) & 0xFF) * amount);
+        int b = (int) Math.round((from & 0xFF) * (1 - amount) + (to & 0xFF) * amount);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /** Relative luminance as defined by WCAG. */
+    private static double luminance(int rgb) {
+        return 0.2126 * channel(rgb >> 16) + 0.7152 * channel(rgb >> 8) + 0.0722 * channel(rgb);
+    }
+
+    private static double channel(int value) {
+        double c = (value & 0xFF) / 255.0;
+        return c <= 0.03928 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4);
+    }
+
+    private static double contrast(double a, double b) {
+        return (Math.max(a, b) + 0.05) / (Math.min(a, b) + 0.05);
+    }
+}
@@ -0,0 +1,206 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Sidecar cache of render plans in the IDE system directory, so reopening a large log applies its
+ * colors without parsing it again. An entry is found by file path and only used while the file length,
+ * timestamp, document length and content hash still match, as well as the long-line threshold and
+ * the terminal-control collapsing that decided which ranges are colored and folded. Entries are read into the heap in one go
+ * and the file closed again, so they can be replaced or deleted at any time; the least recently used
+ * ones are deleted once the cache exceeds its disk budget.
+ */
+final class AnsiPlanCache {
+    private static final int MAGIC = 0x414E5349; // "ANSI"
+    private static final int VERSION = 4;
+    private static final long MAX_CACHE_BYTES = 512L << 20;
+    /** Characters hashed between cancellation checks. */
+    private static final int HASH_CHUNK = 1 << 20;
+    private static final String SUFFIX = ".runs";
+    private static final long FNV_BASIS = 0xcbf29ce484222325L;
+
+    private AnsiPlanCache() {}
+
+    /** Identifies the content a plan was computed for, and the document stamp it was read at. */
+    static final class CacheKey {
+        final long stamp;
+        final String path;
+        final long fileLength;
+        final long timeStamp;
+        final int textLength;
+        final long contentHash;
+        final int longLineThreshold;
+        final boolean collapseTerminalControls;
+
+        private CacheKey(long stamp, String path, long fileLength, long timeStamp, int textLength, long contentHash,
+                         int longLineThreshold, boolean collapseTerminalControls) {
+            this.stamp = stamp;
+            this.path = path;
+            this.fileLength = fileLength;
+            this.timeStamp = timeStamp;
+            this.textLength = textLength;
+            this.contentHash = contentHash;
+            this.longLineThreshold = longLineThreshold;
+            this.collapseTerminalControls = collapseTerminalControls;
+        }
+    }
+
+    /**
+     * Key for the document's current content, or null if it has no file or unsaved changes. The whole
+     * text is hashed, outside the read action, so call it from a background task.
+     */
+    static @Nullable CacheKey keyOf(@NotNull Document doc, @NotNull ProgressIndicator indicator) {
+        CharSequence[] snapshot = new CharSequence[1];
+        CacheKey unhashed = ReadAction.compute(() -> {
+            FileDocumentManager manager = FileDocumentManager.getInstance();
+            VirtualFile file = manager.getFile(doc);
+            if (file == null || !file.isInLocalFileSystem() || manager.isDocumentUnsaved(doc)) return null;
+            snapshot[0] = doc.getImmutableCharSequence();
+            return new CacheKey(doc.getModificationStamp(), file.getPath(), file.getLength(), file.getTimeStamp(), snapshot[0].length(), 0,
+                    LongLineGuard.getThreshold(), AnsiLogSettingsState.getInstance().isCollapseTerminalControls());
+        });
+        if (unhashed == null) return null;
+        CharSequence text = snapshot[0];
+        long h = FNV_BASIS;
+        for (int from = 0; from < text.length(); from += HASH_CHUNK) {
+            indicator.checkCanceled();
+            h = hash(h, text, from, Math.min(text.length(), from + HASH_CHUNK));
+        }
+        return new CacheKey(unhashed.stamp, unhashed.path, unhashed.fileLength, unhashed.timeStamp, unhashed.textLength, h,
+                unhashed.longLineThreshold, unhashed.collapseTerminalControls);
+    }
+
+    static @Nullable AnsiRenderPlan load(@NotNull CacheKey key) {
+        Path path = entryPath(key.path);
+        if (!Files.isRegularFile(path)) return null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Read the entry whole; the channel is closed before the plan is built
+            }
+            buffer.flip();
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+            if (buffer.getLong() != key.fileLength || buffer.getLong() != key.timeStamp
+                    || buffer.getInt() != key.textLength || buffer.getLong() != key.contentHash
+                    || buffer.getInt() != key.longLineThreshold
+                    || (buffer.get() != 0) != key.collapseTerminalControls) return null;
+            byte[] pathBytes = new byte[buffer.getInt()];
+            buffer.get(pathBytes);
+            if (!key.path.equals(new String(pathBytes, StandardCharsets.UTF_8))) return null;
+
+            int[] runs = new int[2 * buffer.getInt()];
+            long[] runStyles = new long[runs.length / 2];
+            int[] escapes = new int[2 * buffer.getInt()];
+            long[] lineEndStates = new long[buffer.getInt()];
+            buffer.asIntBuffer().get(runs);
+            buffer.position(buffer.position() + 4 * runs.length);
+            buffer.asLongBuffer().get(runStyles);
+            buffer.position(buffer.position() + 8 * runStyles.length);
+            buffer.asIntBuffer().get(escapes);
+            buffer.position(buffer.position() + 4 * escapes.length);
+            buffer.asLongBuffer().get(lineEndStates);
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return new AnsiRenderPlan(key.stamp, 0, key.textLength, runs, runStyles, escapes, lineEndStates);
+        } catch (IOException | RuntimeException e) {
+            // A truncated or unreadable entry is treated as a miss
+            return null;
+        }
+    }
+
+    /** Writes a plan covering the whole document, then evicts old entries over the budget. */
+    static void store(@NotNull CacheKey key, @NotNull AnsiRenderPlan plan) {
+        if (plan.startOffset != 0 || plan.stamp != key.stamp) return;
+        Path path = entryPath(key.path);
+        Path tmp = null;
+        try {
+            Files.createDirectories(path.getParent());
+            tmp = Files.createTempFile(path.getParent(), "plan", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                byte[] pathBytes = key.path.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(key.fileLength);
+                out.writeLong(key.timeStamp);
+                out.writeInt(key.textLength);
+                out.writeLong(key.contentHash);
+                out.writeInt(key.longLineThreshold);
+                out.writeBoolean(key.collapseTerminalControls);
+                out.writeInt(pathBytes.length);
+                out.write(pathBytes);
+                out.writeInt(plan.runCount());
+                out.writeInt(plan.escapes.length / 2);
+                out.writeInt(plan.lineEndStates.length);
+                for (int v : plan.runs) out.writeInt(v);
+                for (long v : plan.runStyles) out.writeLong(v);
+                for (int v : plan.escapes) out.writeInt(v);
+                for (long v : plan.lineEndStates) out.writeLong(v);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            evict(path.getParent());
+        } catch (IOException e) {
+            // The cache is best effort
+            try {
+                if (tmp != null) Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void evict(Path dir) throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).forEach(entries::add);
+        }
+        long total = 0;
+        for (Path entry : entries) total += Files.size(entry);
+        if (total <= MAX_CACHE_BYTES) return;
+        entries.sort(Comparator.comparingLong(AnsiPlanCache::lastModified));
+        for (Path entry : entries) {
+            if (total <= MAX_CACHE_BYTES) break;
+            long size = Files.size(entry);
+            if (Files.deleteIfExists(entry)) total -= size;
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static Path entryPath(String filePath) {
+        String name = Long.toHexString(hash(FNV_BASIS, filePath, 0, filePath.length())) + SUFFIX;
+        return PathManager.getSystemDir().resolve("ansi-log-viewer").resolve("plans").resolve(name);
+    }
+
+    /** FNV-1a over the characters, continuing from {@code h}. */
+    private static long hash(long h, CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            h ^= text.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,144 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Chooses how a log is rendered from measured throughput rather than fixed sizes. Full passes,
+ * incremental updates and viewport refreshes report how long they took; the controller keeps a moving
+ * average of their cost per document, and of the full-pass cost per character for the machine as a
+ * whole until a document has its own. From these and the target latencies in the settings it derives
+ * whether a full pass runs on the EDT or in the background, how long edits are debounced, whether a
+ * log is colored only around the visible area and how far apart its style checkpoints are, and
+ * whether a log too slow even for that stays plain.
+ */
+@Service(Service.Level.APP)
+public final class AnsiRenderController {
+    private static final Key<Stats> KEY = Key.create("AnsiRenderController");
+    /** Full-pass cost assumed before any pass was measured: about 1 MB in 100 ms. */
+    private static final double INITIAL_NS_PER_CHAR = 100.0;
+    /** Weight of the newest sample in the moving averages. */
+    private static final double ALPHA = 0.3;
+    /** Samples shorter than this are timer noise and say nothing about throughput. */
+    private static final long MIN_SAMPLE_NS = 1_000_000L;
+    private static final int MIN_DEBOUNCE_MS = 30;
+    /** Consecutive viewport refreshes over the scroll target after which a log is left plain. */
+    private static final int SLOW_REFRESH_LIMIT = 3;
+    private static final int MIN_CHECKPOINT_INTERVAL = 16;
+    private static final int MAX_CHECKPOINT_INTERVAL = 100_000;
+
+    public enum Mode { FULL, LAZY, PLAIN }
+
+    private volatile double nsPerChar = INITIAL_NS_PER_CHAR;
+
+    public static @NotNull AnsiRenderController getInstance() {
+        return ApplicationManager.getApplication().getService(AnsiRenderController.class);
+    }
+
+    /** How a newly opened editor of the document should be rendered. */
+    public @NotNull Mode chooseMode(@NotNull Document doc) {
+        Stats stats = doc.getUserData(KEY);
+        if (stats != null && stats.plain) return Mode.PLAIN;
+        return predictMs(doc, doc.getTextLength()) > AnsiLogSettingsState.getInstance().getTargetFullPassMs() ? Mode.LAZY : Mode.FULL;
+    }
+
+    /**
+     * Lines between the style checkpoints of lazy mode. Rendering a block first parses on from the
+     * checkpoint before it, so a block of average lines is sized to take about half the scroll target.
+     */
+    public int getCheckpointInterval(@NotNull Document doc) {
+        int lines = Math.max(1, doc.getLineCount());
+        double charsPerLine = Math.max(1.0, (double) doc.getTextLength() / lines);
+        double blockMs = AnsiLogSettingsState.getInstance().getTargetScrollMs() / 2.0;
+        double interval = blockMs * 1e6 / (perChar(doc) * charsPerLine);
+        // Multiples of the minimum keep block boundaries aligned when the estimate shifts slightly
+        return (int) Math.min(MAX_CHECKPOINT_INTERVAL, Math.max(MIN_CHECKPOINT_INTERVAL, interval)) / MIN_CHECKPOINT_INTERVAL * MIN_CHECKPOINT_INTERVAL;
+    }
+
+    /** True if a full pass over {@code chars} characters of the document would block the EDT for too long. */
+    public boolean runsInBackground(@NotNull Document doc, int chars) {
+        return predictMs(doc, chars) > AnsiLogSettingsState.getInstance().getTargetSyncMs();
+    }
+
+    /**
+     * Delay before re-parsing after an edit. Cheap updates follow the edit almost at once; costly ones
+     * wait a few times their own duration so that typing is not stalled, but never so long that colors
+     * lag the edit by more than the target.
+     */
+    public int getDebounceMs(@NotNull Document doc) {
+        Stats stats = doc.getUserData(KEY);
+        int target = AnsiLogSettingsState.getInstance().getTargetEditMs();
+        double updateMs = stats != null ? stats.updateMs : 0;
+        int wait = (int) Math.max(MIN_DEBOUNCE_MS, 3 * updateMs);
+        return Math.min(wait, Math.max(MIN_DEBOUNCE_MS, target - (int) updateMs));
+    }
+
+    /** Records a full pass over {@code chars} characters that took {@code nanos} of work. */
+    public void recordFullPass(@NotNull Document doc, int chars, long nanos) {
+        if (chars <= 0 || nanos < MIN_SAMPLE_NS) return;
+        double sample = (double) nanos / chars;
+        Stats stats = stats(doc);
+        stats.nsPerChar = Double.isNaN(stats.nsPerChar) ? sample : average(stats.nsPerChar, sample);
+        nsPerChar = average(nsPerChar, sample);
+    }
+
+    /** Records an incremental update on the EDT. */
+    public void recordUpdate(@NotNull Document doc, long nanos) {
+        Stats stats = stats(doc);
+        stats.updateMs = average(stats.updateMs, nanos / 1e6);
+    }
+
+    /**
+     * Records a viewport refresh that rendered at least one block. Returns true once refreshes have
+     * repeatedly exceeded the scroll target; the document is then left plain until it is re-rendered
+     * on request.
+     */
+    public boolean recordViewportRefresh(@NotNull Document doc, long nanos) {
+        Stats stats = stats(doc);
+        if (nanos / 1_000_000L > AnsiLogSettingsState.getInstance().getTargetScrollMs()) {
+            stats.slowRefreshes++;
+        } else {
+            stats.slowRefreshes = 0;
+        }
+        if (stats.slowRefreshes >= SLOW_REFRESH_LIMIT) stats.plain = true;
+        return stats.plain;
+    }
+
+    /** Forgets the measurements of a document, giving a plain one another chance. */
+    public void reset(@NotNull Document doc) {
+        doc.putUserData(KEY, null);
+    }
+
+    private double predictMs(Document doc, int chars) {
+        return chars * perChar(doc) / 1e6;
+    }
+
+    private double perChar(Document doc) {
+        Stats stats = doc.getUserData(KEY);
+        return stats != null && !Double.isNaN(stats.nsPerChar) ? stats.nsPerChar : nsPerChar;
+    }
+
+    private static Stats stats(Document doc) {
+        Stats stats = doc.getUserData(KEY);
+        if (stats == null) {
+            stats = new Stats();
+            doc.putUserData(KEY, stats);
+        }
+        return stats;
+    }
+
+    private static double average(double current, double sample) {
+        return current + ALPHA * (sample - current);
+    }
+
+    /** Measurements of one document; written on the EDT and by the pass that finished. */
+    private static final class Stats {
+        volatile double nsPerChar = Double.NaN;
+        volatile double updateMs;
+        int slowRefreshes;
+        volatile boolean plain;
+    }
+}
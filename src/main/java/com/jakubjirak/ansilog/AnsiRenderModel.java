@@ -0,0 +1,328 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.FoldRegion;
+import com.intellij.openapi.editor.MarkupModel;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.editor.impl.DocumentMarkupModel;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.Alarm;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Render state of one document, shared by every editor showing it. Style highlighters live in the
+ * document's markup model, so split editors and diff views display them without parsing again;
+ * line states live in the {@link AnsiHighlightSession}. Fold regions belong to a single editor,
+ * so escape folds are applied to each editor of the document. Created by {@link AnsiRenderModelService}.
+ */
+public final class AnsiRenderModel implements DocumentListener, Disposable {
+    private final Project project;
+    private final Document document;
+    private final boolean lexerBackend;
+    private final AnsiHighlightSession session = new AnsiHighlightSession();
+    private final Alarm alarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+    private boolean disposed;
+    private boolean dropped;
+    private @Nullable AnsiRenderPlan retained;
+    private int markupSize;
+    private long lastShown = System.nanoTime();
+
+    AnsiRenderModel(@NotNull Project project, @NotNull Document document, boolean lexerBackend) {
+        this.project = project;
+        this.document = document;
+        this.lexerBackend = lexerBackend;
+        document.addDocumentListener(this, this);
+    }
+
+    public @NotNull Project getProject() {
+        return project;
+    }
+
+    public @NotNull Document getDocument() {
+        return document;
+    }
+
+    /** True if the editors color the text with {@link AnsiEditorHighlighter}; the model then only maintains folds. */
+    public boolean isLexerBackend() {
+        return lexerBackend;
+    }
+
+    @NotNull AnsiHighlightSession getSession() {
+        return session;
+    }
+
+    @NotNull MarkupModel getMarkup() {
+        return DocumentMarkupModel.forDocument(document, project, true);
+    }
+
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    /** Highlighters and folds this model holds, as measured when its last full pass completed. */
+    int getMarkupSize() {
+        return dropped ? 0 : markupSize;
+    }
+
+    boolean isDropped() {
+        return dropped;
+    }
+
+    long getLastShown() {
+        return lastShown;
+    }
+
+    /** True if an editor of the document is currently on screen. */
+    boolean isVisible() {
+        for (Editor editor : EditorFactory.getInstance().getEditors(document, project)) {
+            if (!editor.isDisposed() && editor.getComponent().isShowing()) return true;
+        }
+        return false;
+    }
+
+    /** Counts our highlighters and folds; called when a full pass completes. */
+    void measure() {
+        int size = AnsiLogFileOpenListener.collectRuns(getMarkup(), document.getTextLength(), null, null);
+        for (Editor editor : EditorFactory.getInstance().getEditors(document, project)) {
+            size += AnsiFoldTracker.getInstance(editor).size();
+        }
+        markupSize = size;
+        AnsiMarkupBudget.getInstance().enforce();
+    }
+
+    /**
+     * Releases the highlighters and folds of a hidden document, keeping its runs, escapes and line
+     * states as a plan of plain arrays that {@link #show} applies again without parsing.
+     */
+    void drop() {
+        if (dropped) return;
+        IntArrayList runs = new IntArrayList();
+        LongArrayList runStyles = new LongArrayList();
+        MarkupModel markup = getMarkup();
+        int length = document.getTextLength();
+        AnsiLogFileOpenListener.collectRuns(markup, length, runs, runStyles);
+        IntArrayList escapes = new IntArrayList();
+        for (Editor editor : EditorFactory.getInstance().getEditors(document, project)) {
+            AnsiFoldTracker tracker = AnsiFoldTracker.getInstance(editor);
+            if (escapes.isEmpty()) {
+                for (FoldRegion region : tracker.getRegions()) {
+                    if (!region.isValid()) continue;
+                    escapes.add(region.getStartOffset());
+                    escapes.add(region.getEndOffset());
+                }
+            }
+            tracker.sync(editor, 0, length, new IntArrayList());
+        }
+        long[] lineEndStates = new long[session.getLineCount()];
+        for (int line = 0; line < lineEndStates.length; line++) {
+            lineEndStates[line] = session.getLineEndState(line);
+        }
+        // A parse still running would add markup back; the retained plan replaces its result
+        boolean complete = session.isValid() && !session.hasDirtyLines();
+        session.nextGeneration();
+        AnsiLogFileOpenListener.removeAnsiHighlighters(markup, 0, length);
+        retained = complete ? new AnsiRenderPlan(document.getModificationStamp(), 0, length,
+                runs.toIntArray(), runStyles.toLongArray(), escapes.toIntArray(), lineEndStates) : null;
+        dropped = true;
+    }
+
+    /** Marks the document as shown and rebuilds its markup if it was dropped. */
+    void show() {
+        lastShown = System.nanoTime();
+        if (!dropped) return;
+        dropped = false;
+        AnsiRenderPlan plan = retained;
+        retained = null;
+        if (plan != null && plan.stamp == document.getModificationStamp()) {
+            AsyncAnsiProcessor.applyPlan(this, plan);
+        } else {
+            session.invalidate();
+            AsyncAnsiProcessor.process(this);
+        }
+    }
+
+    /** Replaces the escape folds starting in {@code [start, end)} in every editor of the document. */
+    void updateFolds(int start, int end, @NotNull IntArrayList escapes) {
+        for (Editor editor : EditorFactory.getInstance().getEditors(document, project)) {
+            if (!editor.isDisposed() && ViewportAnsiHighlighter.getInstance(editor) == null) {
+                AnsiLogFileOpenListener.updateFolds(editor, start, end, escapes);
+            }
+        }
+    }
+
+    /** Gives a newly shown editor the escape folds another editor of the document already has. */
+    void copyFoldsTo(@NotNull Editor target) {
+        for (Editor editor : EditorFactory.getInstance().getEditors(document, project)) {
+            if (editor == target || editor.isDisposed()) continue;
+            AnsiFoldTracker tracker = AnsiFoldTracker.getInstance(editor);
+            if (tracker.size() == 0) continue;
+            IntArrayList escapes = new IntArrayList();
+            for (FoldRegion region : tracker.getRegions()) {
+                if (!region.isValid()) continue;
+                escapes.add(region.getStartOffset());
+                escapes.add(region.getEndOffset());
+            }
+            AnsiLogFileOpenListener.updateFolds(target, 0, document.getTextLength(), escapes);
+            return;
+        }
+    }
+
+    /** Re-creates the escape folds of every editor from the current text and setting, without re-coloring. */
+    void refreshFolds() {
+        if (dropped) {
+            // Folds are created from the new setting when the document is shown again
+            retained = null;
+            return;
+        }
+        CharSequence text = document.getImmutableCharSequence();
+        IntArrayList escapes = new IntArrayList();
+        AnsiSgrLexer lexer = new AnsiSgrLexer();
+        lexer.reset(text, 0, text.length());
+        while (lexer.next()) {
+            escapes.add(lexer.getStart());
+            escapes.add(lexer.getEnd());
+        }
+        updateFolds(0, text.length(), escapes);
+    }
+
+    /** Parses the whole document and replaces all highlighters and folds of this model. */
+    void highlightAll() {
+        // Supersedes any background pass still in flight
+        session.nextGeneration();
+        long passStart = System.nanoTime();
+        CharSequence text = document.getImmutableCharSequence();
+        MarkupModel markup = getMarkup();
+        AnsiLogFileOpenListener.removeAnsiHighlighters(markup, 0, text.length());
+
+        int lineCount = AnsiHighlightSession.lineCount(document);
+        AnsiSgrLexer lexer = new AnsiSgrLexer();
+        IntArrayList escapes = new IntArrayList();
+        if (lexerBackend) {
+            // The editor highlighter colors the text itself; only the folds are ours
+            lexer.reset(text, 0, text.length());
+            while (lexer.next()) {
+                escapes.add(lexer.getStart());
+                escapes.add(lexer.getEnd());
+            }
+            session.reset(new long[lineCount], text);
+        } else {
+            // Style runs are split at line ends so that each line can later be re-parsed on its own
+            long style = AnsiStyle.DEFAULT;
+            long[] lineEndStates = new long[lineCount];
+            for (int line = 0; line < lineCount; line++) {
+                style = AnsiLogFileOpenListener.highlightLine(markup, lexer, text, document.getLineStartOffset(line), document.getLineEndOffset(line), style, escapes);
+                lineEndStates[line] = style;
+            }
+            session.reset(lineEndStates, text);
+        }
+        updateFolds(0, text.length(), escapes);
+        // A folds-only pass says nothing about the cost of a markup pass
+        if (!lexerBackend) {
+            AnsiRenderController.getInstance().recordFullPass(document, text.length(), System.nanoTime() - passStart);
+        }
+        measure();
+    }
+
+    /**
+     * Re-parses only the lines touched since the last pass. Parsing starts with the style carried
+     * over from the previous line and stops once a line past the edit ends in the same style as before.
+     * A block appended to the end, as when a log grows on disk, is parsed in the background if
+     * {@link AnsiRenderController} expects it to take too long on the EDT. While such a pass runs,
+     * further appends wait for it and are then parsed on their own.
+     */
+    void update() {
+        // A dropped document is parsed again when it is shown
+        if (dropped) return;
+        if (!session.isValid()) {
+            AsyncAnsiProcessor.process(this);
+            return;
+        }
+        if (!session.hasDirtyLines()) return;
+
+        MarkupModel markup = getMarkup();
+        CharSequence text = document.getImmutableCharSequence();
+        int firstLine = session.getDirtyStartLine();
+        int dirtyEndLine = session.getDirtyEndLine();
+        AnsiRenderController controller = AnsiRenderController.getInstance();
+        if (session.isAppendOnly(text)) {
+            // The pass in flight leaves later appends dirty and calls back once it is applied
+            if (session.isAppendPassRunning()) return;
+            if (controller.runsInBackground(document, text.length() - session.getParsedLength())) {
+                AsyncAnsiProcessor.processAppendAsync(this, firstLine);
+                return;
+            }
+        }
+        session.clearDirtyLines();
+        long updateStart = System.nanoTime();
+
+        if (lexerBackend) {
+            // Colors are re-lexed by the platform; escape folds only depend on the dirty lines themselves
+            IntArrayList escapes = new IntArrayList();
+            AnsiSgrLexer lexer = new AnsiSgrLexer();
+            int start = document.getLineStartOffset(firstLine);
+            int end = document.getLineEndOffset(Math.min(dirtyEndLine, session.getLineCount() - 1));
+            lexer.reset(text, start, end);
+            while (lexer.next()) {
+                escapes.add(lexer.getStart());
+                escapes.add(lexer.getEnd());
+            }
+            updateFolds(start, end, escapes);
+            session.markParsed(text);
+            controller.recordUpdate(document, System.nanoTime() - updateStart);
+            return;
+        }
+
+        long style = firstLine > 0 ? session.getLineEndState(firstLine - 1) : AnsiStyle.DEFAULT;
+        AnsiSgrLexer lexer = new AnsiSgrLexer();
+        IntArrayList escapes = new IntArrayList();
+        int lineCount = session.getLineCount();
+        int line = firstLine;
+        for (; line < lineCount; line++) {
+            int lineStart = document.getLineStartOffset(line);
+            int lineEnd = document.getLineEndOffset(line);
+            AnsiLogFileOpenListener.removeAnsiHighlighters(markup, lineStart, lineEnd);
+            style = AnsiLogFileOpenListener.highlightLine(markup, lexer, text, lineStart, lineEnd, style, escapes);
+            boolean converged = line >= dirtyEndLine && session.getLineEndState(line) == style;
+            session.setLineEndState(line, style);
+            if (converged) break;
+        }
+        int lastLine = Math.min(line, lineCount - 1);
+        updateFolds(document.getLineStartOffset(firstLine), document.getLineEndOffset(lastLine), escapes);
+        session.markParsed(text);
+        controller.recordUpdate(document, System.nanoTime() - updateStart);
+    }
+
+    @Override
+    public void beforeDocumentChange(@NotNull DocumentEvent event) {
+        session.beforeChange(document, event);
+    }
+
+    @Override
+    public void documentChanged(@NotNull DocumentEvent event) {
+        session.afterChange(document, event);
+        if (dropped) {
+            retained = null;
+            return;
+        }
+        alarm.cancelAllRequests();
+        alarm.addRequest(() -> {
+            if (!disposed) update();
+        }, AnsiRenderController.getInstance().getDebounceMs(document));
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        session.nextGeneration();
+        session.invalidate();
+        // The document and its markup outlive the editors; drop the highlighters with the model
+        AnsiLogFileOpenListener.removeAnsiHighlighters(getMarkup(), 0, document.getTextLength());
+    }
+}
@@ -0,0 +1,101 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.EditorFactoryEvent;
+import com.intellij.openapi.editor.event.EditorFactoryListener;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Disposer;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds one {@link AnsiRenderModel} per document of the project. A document is parsed once no matter
+ * how many editors show it; editors opened later, such as splits, get the existing colors and folds.
+ * A model is disposed when the last editor of its document is released. Accessed on the EDT only.
+ * <p>
+ * Every model is registered with the plugin-wide {@link AnsiMarkupBudget}, which may drop it while no
+ * editor shows it; a dropped model is rebuilt from its retained runs when shown again.
+ */
+@Service(Service.Level.PROJECT)
+public final class AnsiRenderModelService implements Disposable {
+    private final Project project;
+    private final Map<Document, AnsiRenderModel> models = new HashMap<>();
+
+    public AnsiRenderModelService(@NotNull Project project) {
+        this.project = project;
+        EditorFactory.getInstance().addEditorFactoryListener(new EditorFactoryListener() {
+            @Override
+            public void editorCreated(@NotNull EditorFactoryEvent event) {
+                Editor editor = event.getEditor();
+                AnsiRenderModel model = models.get(editor.getDocument());
+                if (model == null || editor.getProject() != project) return;
+                if (model.isLexerBackend()) AnsiEditorHighlighter.install(editor);
+                // Let the editor finish initializing before folds are added to it
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    if (!editor.isDisposed() && !model.isDisposed()) model.copyFoldsTo(editor);
+                });
+            }
+
+            @Override
+            public void editorReleased(@NotNull EditorFactoryEvent event) {
+                Editor released = event.getEditor();
+                Document doc = released.getDocument();
+                AnsiRenderModel model = models.get(doc);
+                if (model == null) return;
+                for (Editor editor : EditorFactory.getInstance().getEditors(doc, project)) {
+                    if (editor != released && !editor.isDisposed()) return;
+                }
+                models.remove(doc);
+                Disposer.dispose(model);
+            }
+        }, this);
+    }
+
+    public static @NotNull AnsiRenderModelService getInstance(@NotNull Project project) {
+        return project.getService(AnsiRenderModelService.class);
+    }
+
+    public @Nullable AnsiRenderModel getModel(@NotNull Document document) {
+        return models.get(document);
+    }
+
+    /** Model of the editor's document, created without parsing if the document has none yet. */
+    public @NotNull AnsiRenderModel getOrCreate(@NotNull Editor editor) {
+        Document doc = editor.getDocument();
+        AnsiRenderModel model = models.get(doc);
+        if (model == null) {
+            model = new AnsiRenderModel(project, doc, AnsiEditorHighlighter.isInstalled(editor));
+            models.put(doc, model);
+            Disposer.register(this, model);
+            AnsiMarkupBudget.getInstance().register(model);
+        }
+        return model;
+    }
+
+    /** Shows the document's colors in the editor, parsing the document only if no other editor did. */
+    public void open(@NotNull Editor editor) {
+        AnsiRenderModel model = models.get(editor.getDocument());
+        if (model != null) {
+            if (model.isDropped()) {
+                model.show();
+            } else {
+                model.copyFoldsTo(editor);
+            }
+            return;
+        }
+        AsyncAnsiProcessor.process(getOrCreate(editor));
+    }
+
+    @Override
+    public void dispose() {
+        models.clear();
+    }
+}
@@ -0,0 +1,129 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Immutable result of parsing a whole document: the style runs to highlight, the escapes to fold and
+ * the style at the end of every line. It is computed off the EDT and applied later, so it records the
+ * document stamp it was computed for; a plan whose stamp no longer matches the document is stale.
+ * A plan may cover only the document from {@link #startOffset} on, e.g. the part appended to a log.
+ * Large documents are parsed in newline-aligned chunks on the fork-join pool, see {@link AnsiChunkParser}.
+ */
+final class AnsiRenderPlan {
+    private static final int PROGRESS_LINES = 4096;
+    private static final int PARALLEL_THRESHOLD = 4_000_000;
+    private static final int MIN_CHUNK_SIZE = 1_000_000;
+
+    final long stamp;
+    final int startOffset;
+    final int textLength;
+    /** Runs as (start, end) offset pairs, sorted by offset. */
+    final int[] runs;
+    final long[] runStyles;
+    /** Escapes as (start, end) offset pairs, sorted by offset. */
+    final int[] escapes;
+    final long[] lineEndStates;
+
+    AnsiRenderPlan(long stamp, int startOffset, int textLength, int[] runs, long[] runStyles, int[] escapes, long[] lineEndStates) {
+        this.stamp = stamp;
+        this.startOffset = startOffset;
+        this.textLength = textLength;
+        this.runs = runs;
+        this.runStyles = runStyles;
+        this.escapes = escapes;
+        this.lineEndStates = lineEndStates;
+    }
+
+    int runCount() {
+        return runStyles.length;
+    }
+
+    /** Parses the document; must run inside a read action and checks the indicator for cancellation. */
+    static @NotNull AnsiRenderPlan compute(@NotNull Document doc, @NotNull ProgressIndicator indicator) {
+        return compute(doc, indicator, new long[0]);
+    }
+
+    /**
+     * Parses the document from the line after the given prefix on, taking the end states of the
+     * prefix lines as known. Falls back to the whole document if the prefix no longer fits it.
+     */
+    static @NotNull AnsiRenderPlan compute(@NotNull Document doc, @NotNull ProgressIndicator indicator, long @NotNull [] prefixStates) {
+        long stamp = doc.getModificationStamp();
+        CharSequence text = doc.getImmutableCharSequence();
+        int lineCount = AnsiHighlightSession.lineCount(doc);
+        int firstLine = prefixStates.length < lineCount ? prefixStates.length : 0;
+        int startOffset = doc.getLineStartOffset(firstLine);
+        long style = firstLine > 0 ? prefixStates[firstLine - 1] : AnsiStyle.DEFAULT;
+        IntArrayList runs = new IntArrayList();
+        LongArrayList runStyles = new LongArrayList();
+        IntArrayList escapes = new IntArrayList();
+        long[] lineEndStates = new long[lineCount];
+        System.arraycopy(prefixStates, 0, lineEndStates, 0, firstLine);
+        AnsiLogFileOpenListener.StyleRunSink sink = (start, end, runStyle) -> {
+            if (start >= end || runStyle == AnsiStyle.DEFAULT) return;
+            runs.add(start);
+            runs.add(end);
+            runStyles.add(runStyle);
+        };
+
+        if (text.length() - startOffset >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            List<AnsiChunkParser> chunks = parseChunks(text, startOffset, indicator);
+            AnsiChunkParser.resolveAll(chunks, style, sink, escapes, lineEndStates, firstLine);
+        } else {
+            AnsiSgrLexer lexer = new AnsiSgrLexer();
+            for (int line = firstLine; line < lineCount; line++) {
+                if ((line - firstLine) % PROGRESS_LINES == 0) {
+                    ProgressManager.checkCanceled();
+                    indicator.setFraction((double) (line - firstLine) / (lineCount - firstLine));
+                }
+                style = AnsiLogFileOpenListener.parseLine(lexer, text, doc.getLineStartOffset(line), doc.getLineEndOffset(line), style, sink, escapes);
+                lineEndStates[line] = style;
+            }
+        }
+        return new AnsiRenderPlan(stamp, startOffset, text.length(), runs.toIntArray(), runStyles.toLongArray(), escapes.toIntArray(), lineEndStates);
+    }
+
+    /** Splits the text from {@code startOffset} on at newlines and parses the chunks in parallel. */
+    private static List<AnsiChunkParser> parseChunks(CharSequence text, int startOffset, ProgressIndicator indicator) {
+        int length = text.length();
+        int chunkCount = Math.max(1, Math.min(ForkJoinPool.getCommonPoolParallelism() * 4, (length - startOffset) / MIN_CHUNK_SIZE));
+        List<AnsiChunkParser> chunks = new ArrayList<>(chunkCount);
+        int chunkStart = startOffset;
+        for (int i = 1; i < chunkCount; i++) {
+            int target = startOffset + (int) ((long) (length - startOffset) * i / chunkCount);
+            int chunkEnd = indexOfNewline(text, Math.max(target, chunkStart)) + 1;
+            if (chunkEnd <= 0 || chunkEnd >= length) break;
+            chunks.add(new AnsiChunkParser(text, chunkStart, chunkEnd, false));
+            chunkStart = chunkEnd;
+        }
+        chunks.add(new AnsiChunkParser(text, chunkStart, length, true));
+
+        // Worker threads do not inherit the read action's indicator, so they check it explicitly
+        ProgressIndicator cancellation = ProgressManager.getInstance().getProgressIndicator();
+        AtomicInteger done = new AtomicInteger();
+        int total = chunks.size();
+        chunks.parallelStream().forEach(chunk -> {
+            chunk.parse(cancellation);
+            indicator.setFraction((double) done.incrementAndGet() / total);
+        });
+        ProgressManager.checkCanceled();
+        return chunks;
+    }
+
+    private static int indexOfNewline(CharSequence text, int from) {
+        for (int i = from; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') return i;
+        }
+        return -1;
+    }
+}
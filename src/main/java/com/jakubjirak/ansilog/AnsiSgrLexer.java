@@ -0,0 +1,160 @@
+package com.jakubjirak.ansilog;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Hand-written tokenizer for SGR escape sequences ({@code ESC[...m}).
+ * Recognizes the same input as {@link AnsiPatternUtil#ANSI_PATTERN}: both the real ESC character
+ * and the literal six-character {@code \u001B} form. Parameters are decoded into a reusable
+ * int buffer, so scanning a document creates no objects.
+ *
+ * <pre>
+ * AnsiSgrLexer lexer = new AnsiSgrLexer();
+ * lexer.reset(text, 0, text.length());
+ * while (lexer.next()) {
+ *     // lexer.getStart(), lexer.getEnd(), lexer.getParam(i) for i < lexer.getParamCount()
+ * }
+ * </pre>
+ *
+ * Empty parameters between separators are reported as {@link #EMPTY_PARAM}; a sequence without any
+ * parameters ({@code ESC[m}) is reported as a single {@code 0}. Instances are not thread-safe.
+ */
+public final class AnsiSgrLexer {
+    public static final int EMPTY_PARAM = -1;
+    private static final int MAX_PARAMS = 32;
+    private static final int MAX_PARAM_VALUE = 65_535;
+    private static final String LITERAL_ESC = "\\u001B";
+
+    private final int[] params = new int[MAX_PARAMS];
+    private CharSequence text = "";
+    private int pos;
+    private int limit;
+    private int start;
+    private int end;
+    private int paramCount;
+
+    public void reset(@NotNull CharSequence text, int from, int to) {
+        this.text = text;
+        this.pos = from;
+        this.limit = to;
+        this.start = -1;
+        this.end = -1;
+        this.paramCount = 0;
+    }
+
+    /** Advances to the next SGR sequence in the current range; returns false when none is left. */
+    public boolean next() {
+        CharSequence s = text;
+        int limit = this.limit;
+        for (int i = skipToCandidate(s, pos, limit); i < limit; i = skipToCandidate(s, i + 1, limit)) {
+            int bracket;
+            if (s.charAt(i) == '\u001B') {
+                bracket = i + 1;
+            } else if (isLiteralEscape(s, i, limit)) {
+                bracket = i + LITERAL_ESC.length();
+            } else {
+                continue;
+            }
+            if (bracket < limit && s.charAt(bracket) == '[') {
+                int seqEnd = parseParams(s, bracket + 1, limit);
+                if (seqEnd >= 0) {
+                    start = i;
+                    end = seqEnd;
+                    pos = seqEnd;
+                    return true;
+                }
+            }
+        }
+        pos = limit;
+        start = -1;
+        end = -1;
+        paramCount = 0;
+        return false;
+    }
+
+    /** Offset of the first character of the current sequence. */
+    public int getStart() {
+        return start;
+    }
+
+    /** Offset just past the terminating {@code m} of the current sequence. */
+    public int getEnd() {
+        return end;
+    }
+
+    public int getParamCount() {
+        return paramCount;
+    }
+
+    public int getParam(int index) {
+        return params[index];
+    }
+
+    /** Direct access to the parameter buffer; only the first {@link #getParamCount()} entries are valid. */
+    public int[] getParams() {
+        return params;
+    }
+
+    /** Counts the SGR sequences in the range. */
+    public static int count(@NotNull CharSequence text, int from, int to) {
+        AnsiSgrLexer lexer = new AnsiSgrLexer();
+        lexer.reset(text, from, to);
+        int count = 0;
+        while (lexer.next()) count++;
+        return count;
+    }
+
+    /** Returns true if the range contains at least one SGR sequence. */
+    public static boolean containsSgr(@NotNull CharSequence text, int from, int to) {
+        AnsiSgrLexer lexer = new AnsiSgrLexer();
+        lexer.reset(text, from, to);
+        return lexer.next();
+    }
+
+    /** Offset of the next ESC or backslash at or after {@code i}, or {@code limit}; the only characters a sequence starts with. */
+    private static int skipToCandidate(CharSequence s, int i, int limit) {
+        while (i < limit) {
+            char c = s.charAt(i);
+            if (c == '\u001B' || c == '\\') return i;
+            i++;
+        }
+        return limit;
+    }
+
+    private static boolean isLiteralEscape(CharSequence s, int i, int limit) {
+        if (i + LITERAL_ESC.length() > limit) return false;
+        for (int k = 1; k < LITERAL_ESC.length(); k++) {
+            if (s.charAt(i + k) != LITERAL_ESC.charAt(k)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Decodes {@code [0-9;]*m} starting at {@code i}. Returns the offset after {@code m},
+     * or -1 if the characters do not form a complete SGR sequence.
+     */
+    private int parseParams(CharSequence s, int i, int limit) {
+        int count = 0;
+        int value = EMPTY_PARAM;
+        for (; i < limit; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                int digit = c - '0';
+                value = value == EMPTY_PARAM ? digit : Math.min(MAX_PARAM_VALUE, value * 10 + digit);
+            } else if (c == ';') {
+                if (count < MAX_PARAMS) params[count++] = value;
+                value = EMPTY_PARAM;
+            } else if (c == 'm') {
+                if (value != EMPTY_PARAM && count < MAX_PARAMS) params[count++] = value;
+                // Trailing empty parameters carry no meaning
+                while (count > 0 && params[count - 1] == EMPTY_PARAM) count--;
+                if (count == 0) params[count++] = 0;
+                paramCount = count;
+                return i + 1;
+            } else {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
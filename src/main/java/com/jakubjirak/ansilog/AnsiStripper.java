@@ -0,0 +1,82 @@
+package com.jakubjirak.ansilog;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Removes SGR sequences from text in one pass, recognizing them exactly as {@link AnsiSgrLexer} does.
+ * Text between sequences is copied in bulk into a reusable buffer; text without sequences is returned
+ * as is. An instance created with offset mapping also records every removed sequence in an
+ * {@link AnsiOffsetMap}, so that an offset in the clean text, such as a search hit, can be mapped back
+ * into the document. A {@link SequenceListener} sees each sequence as it is removed, for callers that
+ * also need the styles.
+ *
+ * <pre>
+ * AnsiStripper stripper = new AnsiStripper(true);
+ * CharSequence clean = stripper.strip(text, 0, text.length());
+ * int hit = StringUtil.indexOf(clean, "needle");
+ * int rawHit = stripper.getOffsetMap().toRaw(hit);
+ * </pre>
+ *
+ * Instances are not thread-safe; the result of {@link #strip} is valid until the next call.
+ */
+public final class AnsiStripper {
+    private final AnsiSgrLexer lexer = new AnsiSgrLexer();
+    private final StringBuilder buffer = new StringBuilder();
+    private final boolean mapOffsets;
+    private AnsiOffsetMap.Builder offsets;
+    private AnsiOffsetMap offsetMap;
+
+    /** Receives each sequence removed by {@link #strip}. */
+    @FunctionalInterface
+    public interface SequenceListener {
+        /** {@code clean} is the text kept so far, so its length is the clean offset of the sequence. */
+        void sequence(@NotNull CharSequence clean, @NotNull AnsiSgrLexer lexer);
+    }
+
+    public AnsiStripper() {
+        this(false);
+    }
+
+    public AnsiStripper(boolean mapOffsets) {
+        this.mapOffsets = mapOffsets;
+    }
+
+    /** The text without SGR sequences. */
+    public static @NotNull String strip(@NotNull CharSequence text) {
+        return new AnsiStripper().strip(text, 0, text.length()).toString();
+    }
+
+    /**
+     * Strips the range. Returns the range itself if it has no sequences, otherwise the internal buffer.
+     * Offsets in the clean text and in the offset map are relative to {@code from}.
+     */
+    public @NotNull CharSequence strip(@NotNull CharSequence text, int from, int to) {
+        return strip(text, from, to, null);
+    }
+
+    /** Strips the range like {@link #strip(CharSequence, int, int)}, reporting each sequence to the listener. */
+    public @NotNull CharSequence strip(@NotNull CharSequence text, int from, int to, @Nullable SequenceListener listener) {
+        offsets = mapOffsets ? new AnsiOffsetMap.Builder() : null;
+        offsetMap = null;
+        lexer.reset(text, from, to);
+        if (!lexer.next()) return text.subSequence(from, to);
+        buffer.setLength(0);
+        int kept = from;
+        do {
+            buffer.append(text, kept, lexer.getStart());
+            if (offsets != null) offsets.addEscape(buffer.length(), lexer.getEnd() - lexer.getStart());
+            if (listener != null) listener.sequence(buffer, lexer);
+            kept = lexer.getEnd();
+        } while (lexer.next());
+        buffer.append(text, kept, to);
+        return buffer;
+    }
+
+    /** Sequences removed by the last {@link #strip}; needs an instance that maps offsets. */
+    public @NotNull AnsiOffsetMap getOffsetMap() {
+        if (offsets == null) throw new IllegalStateException("Offset mapping is off");
+        if (offsetMap == null) offsetMap = offsets.build();
+        return offsetMap;
+    }
+}
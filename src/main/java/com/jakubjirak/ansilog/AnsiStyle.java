@@ -0,0 +1,126 @@
+package com.jakubjirak.ansilog;
+
+/**
+ * SGR style state packed into a primitive {@code long}.
+ *
+ * <pre>
+ * bits  0-23  foreground value (24-bit RGB, or palette index when the palette flag is set)
+ * bit   24    foreground set
+ * bit   25    foreground is a palette index
+ * bits 26-49  background value
+ * bit   50    background set
+ * bit   51    background is a palette index
+ * bit   52    bold
+ * bit   53    italic
+ * bit   54    underline
+ * </pre>
+ *
+ * {@link #DEFAULT} (no color, no attributes) is {@code 0}. Values with any of the upper bits set are
+ * never produced by {@link #apply}, so callers may use e.g. {@link #UNKNOWN} as a sentinel.
+ * <p>
+ * Every SGR sequence acts on the bits independently: it maps a style {@code s} to
+ * {@code (s & keep) | set} with {@code keep = apply(STYLE_BITS, ...)} and {@code set = apply(DEFAULT, ...)}.
+ * {@link AnsiChunkParser} relies on this to parse text whose starting style is not yet known.
+ */
+public final class AnsiStyle {
+    public static final long DEFAULT = 0L;
+    public static final long UNKNOWN = -1L;
+
+    private static final int FG_SHIFT = 0;
+    private static final int BG_SHIFT = 26;
+    private static final long COLOR_MASK = 0x3FFFFFFL; // value + set + palette flags
+    private static final long VALUE_MASK = 0xFFFFFFL;
+    private static final long SET_BIT = 1L << 24;
+    private static final long PALETTE_BIT = 1L << 25;
+    public static final long BOLD = 1L << 52;
+    public static final long ITALIC = 1L << 53;
+    public static final long UNDERLINE = 1L << 54;
+    /** All bits a style produced by {@link #apply} can have set. */
+    static final long STYLE_BITS = (UNDERLINE << 1) - 1;
+
+    private AnsiStyle() {}
+
+    /** Applies the parameters of one SGR sequence, as decoded by {@link AnsiSgrLexer}. */
+    public static long apply(long style, int[] codes, int count) {
+        for (int i = 0; i < count; i++) {
+            int c = codes[i];
+            if (c == AnsiSgrLexer.EMPTY_PARAM) continue;
+            if (c == 0) style = DEFAULT;
+            else if (c == 1) style |= BOLD;
+            else if (c == 3) style |= ITALIC;
+            else if (c == 4) style |= UNDERLINE;
+            else if (c == 22) style &= ~BOLD;
+            else if (c == 23) style &= ~ITALIC;
+            else if (c == 24) style &= ~UNDERLINE;
+            else if (30 <= c && c <= 37) style = withForeground(style, palette(c - 30));
+            else if (90 <= c && c <= 97) style = withForeground(style, palette(c - 90 + 8));
+            else if (c == 39) style = withForeground(style, 0);
+            else if (40 <= c && c <= 47) style = withBackground(style, palette(c - 40));
+            else if (100 <= c && c <= 107) style = withBackground(style, palette(c - 100 + 8));
+            else if (c == 49) style = withBackground(style, 0);
+            else if ((c == 38 || c == 48) && i + 1 < count) { // 256-color & truecolor
+                long color = -1;
+                if (codes[i + 1] == 5 && i + 2 < count) {
+                    if (codes[i + 2] >= 0) color = palette(Math.min(255, codes[i + 2]));
+                    i += 2;
+                } else if (codes[i + 1] == 2 && i + 4 < count) {
+                    int r = codes[i + 2], g = codes[i + 3], b = codes[i + 4];
+                    if (r >= 0 && g >= 0 && b >= 0) color = rgb(Math.min(255, r), Math.min(255, g), Math.min(255, b));
+                    i += 4;
+                }
+                if (color >= 0) style = c == 38 ? withForeground(style, color) : withBackground(style, color);
+            }
+        }
+        return style;
+    }
+
+    public static boolean hasForeground(long style) {
+        return (style & (SET_BIT << FG_SHIFT)) != 0;
+    }
+
+    public static boolean hasBackground(long style) {
+        return (style & (SET_BIT << BG_SHIFT)) != 0;
+    }
+
+    /** Foreground as 0xRRGGBB, resolving palette indices through the given palette. */
+    public static int foregroundRgb(long style, int[] palette) {
+        return resolve((style >>> FG_SHIFT) & COLOR_MASK, palette);
+    }
+
+    public static int backgroundRgb(long style, int[] palette) {
+        return resolve((style >>> BG_SHIFT) & COLOR_MASK, palette);
+    }
+
+    public static boolean isBold(long style) {
+        return (style & BOLD) != 0;
+    }
+
+    public static boolean isItalic(long style) {
+        return (style & ITALIC) != 0;
+    }
+
+    public static boolean isUnderline(long style) {
+        return (style & UNDERLINE) != 0;
+    }
+
+    private static int resolve(long color, int[] palette) {
+        int value = (int) (color & VALUE_MASK);
+        return (color & PALETTE_BIT) != 0 ? palette[value & 0xFF] : value;
+    }
+
+    private static long palette(int index) {
+        return SET_BIT | PALETTE_BIT | index;
+    }
+
+    private static long rgb(int r, int g, int b) {
+        return SET_BIT | ((long) r << 16) | ((long) g << 8) | b;
+    }
+
+    private static long withForeground(long style, long color) {
+        return (style & ~(COLOR_MASK << FG_SHIFT)) | (color << FG_SHIFT);
+    }
+
+    private static long withBackground(long style, long color) {
+        return (style & ~(COLOR_MASK << BG_SHIFT)) | (color << BG_SHIFT);
+    }
+}
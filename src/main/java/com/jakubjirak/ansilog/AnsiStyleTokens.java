@@ -0,0 +1,66 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.editor.colors.TextAttributesKey;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Registry giving every distinct {@link AnsiStyle} a small int id, an {@link IElementType} and a
+ * {@link TextAttributesKey} for the editor-highlighter backend. Id 0 is the default style.
+ * Element types are global and never unregistered, so the number of ids is capped; styles beyond
+ * the cap are rendered in the default style.
+ */
+public final class AnsiStyleTokens {
+    private static final int MAX_STYLES = 4096;
+    private static final TextAttributesKey[] NO_KEYS = new TextAttributesKey[0];
+
+    private static final Map<Long, Integer> ids = new HashMap<>();
+    private static final List<StyleElementType> types = new ArrayList<>();
+
+    static {
+        idOf(AnsiStyle.DEFAULT);
+    }
+
+    private AnsiStyleTokens() {}
+
+    public static synchronized int idOf(long style) {
+        Integer id = ids.get(style);
+        if (id != null) return id;
+        if (types.size() >= MAX_STYLES) return 0;
+        int newId = types.size();
+        types.add(new StyleElementType(style, newId));
+        ids.put(style, newId);
+        return newId;
+    }
+
+    public static synchronized long styleOf(int id) {
+        return id >= 0 && id < types.size() ? types.get(id).style : AnsiStyle.DEFAULT;
+    }
+
+    public static synchronized @NotNull IElementType typeOf(int id) {
+        return types.get(id >= 0 && id < types.size() ? id : 0);
+    }
+
+    public static @NotNull TextAttributesKey[] keysOf(@NotNull IElementType type) {
+        return type instanceof StyleElementType ? ((StyleElementType) type).keys : NO_KEYS;
+    }
+
+    private static final class StyleElementType extends IElementType {
+        final long style;
+        final TextAttributesKey[] keys;
+
+        StyleElementType(long style, int id) {
+            super("ANSI_STYLE_" + id, null);
+            this.style = style;
+            TextAttributes attrs = AnsiTextAttributesCache.getInstance().get(style);
+            this.keys = attrs == null ? NO_KEYS
+                    : new TextAttributesKey[]{TextAttributesKey.createTempTextAttributesKey("ANSI_STYLE_" + id, attrs)};
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.jakubjirak.ansilog;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Terminal semantics within one line, for progress output that redraws itself: carriage return,
+ * backspace, erase in line ({@code ESC[K}) and horizontal cursor moves ({@code ESC[nC}, {@code ESC[nD},
+ * {@code ESC[nG}). The line is replayed into a row of cells that remember which character wrote them.
+ * If the final row is one contiguous stretch of the text, everything around it can be hidden with one
+ * fold on each side; the parsers then style only that stretch.
+ * <p>
+ * When the final row mixes fragments written at different times, which no fold can show, the fragment
+ * contributing most of the row is shown instead. Other sequences, such as cursor visibility, take no
+ * space and are ignored.
+ */
+final class AnsiTerminalLine {
+    /** Returned when the line has no terminal controls and is shown as it is. */
+    static final long NONE = -1L;
+    private static final String LITERAL_ESC = "\\u001B";
+
+    private AnsiTerminalLine() {}
+
+    static int visibleStart(long visible) {
+        return (int) (visible >>> 32);
+    }
+
+    static int visibleEnd(long visible) {
+        return (int) visible;
+    }
+
+    /**
+     * Visible part of {@code [lineStart, lineEnd)} packed as {@code (start << 32) | end}, or {@link #NONE}
+     * if the line has no terminal controls or collapsing is turned off.
+     */
+    static long collapse(@NotNull CharSequence text, int lineStart, int lineEnd) {
+        if (!hasControls(text, lineStart, lineEnd)) return NONE;
+        if (!AnsiLogSettingsState.getInstance().isCollapseTerminalControls()) return NONE;
+
+        int maxColumn = lineEnd - lineStart;
+        // Source offset and segment of the character in each column; -1 for a blank cell
+        int[] cells = new int[Math.min(maxColumn, 256)];
+        int[] segments = new int[cells.length];
+        int width = 0;
+        int column = 0;
+        int segment = 0;
+        for (int i = lineStart; i < lineEnd; i++) {
+            char c = text.charAt(i);
+            int bracket = c == '\u001B' ? i + 1 : c == '\\' && isLiteralEscape(text, i, lineEnd) ? i + LITERAL_ESC.length() : -1;
+            if (bracket >= 0 && bracket < lineEnd && text.charAt(bracket) == '[') {
+                int finalIndex = findFinal(text, bracket + 1, lineEnd);
+                if (finalIndex >= 0) {
+                    char command = text.charAt(finalIndex);
+                    int param = firstParam(text, bracket + 1, finalIndex);
+                    if (command == 'K') {
+                        if (param <= 0) {
+                            width = Math.min(width, column);
+                        } else {
+                            for (int k = 0; k < Math.min(width, param == 1 ? column + 1 : width); k++) cells[k] = -1;
+                            if (param == 2) width = 0;
+                        }
+                        segment++;
+                    } else if (command == 'C' || command == 'D' || command == 'G') {
+                        int n = Math.max(1, param);
+                        column = command == 'C' ? column + n : command == 'D' ? column - n : n - 1;
+                        column = Math.max(0, Math.min(maxColumn, column));
+                        segment++;
+                    }
+                    i = finalIndex;
+                    continue;
+                }
+            }
+            if (c == '\r' || c == '\b') {
+                column = c == '\r' ? 0 : Math.max(0, column - 1);
+                segment++;
+                continue;
+            }
+            if (column >= cells.length) {
+                int size = Math.max(column + 1, cells.length * 2);
+                cells = Arrays.copyOf(cells, size);
+                segments = Arrays.copyOf(segments, size);
+            }
+            for (int k = width; k < column; k++) cells[k] = -1;
+            cells[column] = i;
+            segments[column] = segment;
+            column++;
+            width = Math.max(width, column);
+        }
+        if (width == 0) return pack(lineEnd, lineEnd);
+
+        // The shown fragment is the segment owning the most cells; normally it owns all of them
+        int best = -1;
+        int bestCount = 0;
+        int count = 0;
+        for (int k = 0; k < width; k++) {
+            if (cells[k] < 0) continue;
+            count = k > 0 && cells[k - 1] >= 0 && segments[k - 1] == segments[k] ? count + 1 : 1;
+            if (count > bestCount) {
+                bestCount = count;
+                best = k;
+            }
+        }
+        if (best < 0) return pack(lineEnd, lineEnd);
+        return pack(cells[best - bestCount + 1], cells[best] + 1);
+    }
+
+    private static long pack(int start, int end) {
+        return ((long) start << 32) | end;
+    }
+
+    /** Cheap scan for a carriage return, backspace or a non-SGR CSI sequence. */
+    private static boolean hasControls(CharSequence text, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c == '\r' || c == '\b') return true;
+            int bracket = c == '\u001B' ? i + 1 : c == '\\' && isLiteralEscape(text, i, to) ? i + LITERAL_ESC.length() : -1;
+            if (bracket < 0 || bracket >= to || text.charAt(bracket) != '[') continue;
+            int finalIndex = findFinal(text, bracket + 1, to);
+            if (finalIndex < 0) continue;
+            char command = text.charAt(finalIndex);
+            if (command == 'K' || command == 'C' || command == 'D' || command == 'G') return true;
+            i = finalIndex;
+        }
+        return false;
+    }
+
+    /** Index of the final byte of a CSI sequence whose parameters start at {@code i}, or -1. */
+    private static int findFinal(CharSequence text, int i, int limit) {
+        for (; i < limit; i++) {
+            char c = text.charAt(i);
+            if (c >= 0x40 && c <= 0x7E) return i;
+            if (c < 0x20 || c > 0x3F) return -1;
+        }
+        return -1;
+    }
+
+    /** First numeric parameter, or 0 if it is missing. */
+    private static int firstParam(CharSequence text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') break;
+            value = Math.min(65_535, value * 10 + (c - '0'));
+        }
+        return value;
+    }
+
+    private static boolean isLiteralEscape(CharSequence s, int i, int limit) {
+        if (i + LITERAL_ESC.length() > limit) return false;
+        for (int k = 1; k < LITERAL_ESC.length(); k++) {
+            if (s.charAt(i + k) != LITERAL_ESC.charAt(k)) return false;
+        }
+        return true;
+    }
+}
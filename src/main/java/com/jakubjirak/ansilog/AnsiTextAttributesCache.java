@@ -0,0 +1,107 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.editor.markup.EffectType;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.Color;
+import java.awt.Font;
+
+/**
+ * Flyweight cache mapping each distinct packed {@link AnsiStyle} to one shared {@link TextAttributes}.
+ * Logs use only a handful of distinct styles, so every highlighter of the same style shares one instance.
+ * The returned attributes must not be modified by callers; when the palette changes they are recolored
+ * in place, so existing highlighters show the new colors after a repaint.
+ */
+public final class AnsiTextAttributesCache {
+    private static final AnsiTextAttributesCache INSTANCE = new AnsiTextAttributesCache();
+
+    // Lookup tables from AnsiPalette, set on first use
+    private int[] foreground;
+    private int[] background;
+
+    // Open-addressing table; key 0 (AnsiStyle.DEFAULT) marks an empty slot because it is never stored
+    private long[] keys = new long[64];
+    private TextAttributes[] values = new TextAttributes[64];
+    private int size;
+
+    public static AnsiTextAttributesCache getInstance() {
+        return INSTANCE;
+    }
+
+    /** Shared attributes for the style, or null for the default style, which needs no highlighter. */
+    public synchronized @Nullable TextAttributes get(long style) {
+        if (style == AnsiStyle.DEFAULT) return null;
+        int mask = keys.length - 1;
+        for (int i = slot(style, mask); ; i = (i + 1) & mask) {
+            long key = keys[i];
+            if (key == style) return values[i];
+            if (key == AnsiStyle.DEFAULT) {
+                TextAttributes attrs = create(style);
+                keys[i] = style;
+                values[i] = attrs;
+                if (++size * 2 > keys.length) grow();
+                return attrs;
+            }
+        }
+    }
+
+    /** Switches to new lookup tables and recolors every cached attributes instance. */
+    public synchronized void setPalette(int @NotNull [] foreground, int @NotNull [] background) {
+        this.foreground = foreground;
+        this.background = background;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != AnsiStyle.DEFAULT) applyColors(values[i], keys[i]);
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        keys = new long[64];
+        values = new TextAttributes[64];
+        size = 0;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        TextAttributes[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new TextAttributes[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] == AnsiStyle.DEFAULT) continue;
+            int i = slot(oldKeys[j], mask);
+            while (keys[i] != AnsiStyle.DEFAULT) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    private void applyColors(TextAttributes attrs, long style) {
+        if (AnsiStyle.hasForeground(style)) attrs.setForegroundColor(new Color(AnsiStyle.foregroundRgb(style, foreground)));
+        if (AnsiStyle.hasBackground(style)) attrs.setBackgroundColor(new Color(AnsiStyle.backgroundRgb(style, background)));
+    }
+
+    private static int slot(long style, int mask) {
+        long h = style * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private TextAttributes create(long style) {
+        if (foreground == null) {
+            foreground = AnsiPalette.foreground();
+            background = AnsiPalette.background();
+        }
+        TextAttributes attrs = new TextAttributes();
+        applyColors(attrs, style);
+        int fontType = (AnsiStyle.isBold(style) ? Font.BOLD : 0) | (AnsiStyle.isItalic(style) ? Font.ITALIC : 0);
+        attrs.setFontType(fontType);
+        if (AnsiStyle.isUnderline(style)) attrs.setEffectType(EffectType.LINE_UNDERSCORE);
+        return attrs;
+    }
+
+}
@@ -130,6 +130,6 @@ public class ApplicationContextDetectorAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        e.getPresentation().setEnabled(editor != null && !editor.getDocument().getText().isEmpty());
+        e.getPresentation().setEnabled(editor != null && editor.getDocument().getTextLength() > 0);
     }
 }
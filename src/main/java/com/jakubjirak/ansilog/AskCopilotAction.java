@@ -47,6 +47,6 @@ public class AskCopilotAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        e.getPresentation().setEnabled(editor != null && !editor.getDocument().getText().isEmpty());
+        e.getPresentation().setEnabled(editor != null && editor.getDocument().getTextLength() > 0);
     }
 }
@@ -1,27 +1,73 @@
 package com.jakubjirak.ansilog;
 
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.MarkupModel;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+/**
+ * Full highlighting pass for large documents. The document is parsed in a cancellable non-blocking
+ * read action on a background thread; the resulting {@link AnsiRenderPlan} is then applied on the EDT
+ * in slices of a few milliseconds each, so painting and typing continue while a large log is colored.
+ */
 public class AsyncAnsiProcessor {
-    private static final int LARGE_FILE_THRESHOLD = 1_000_000;
+    private static final long SLICE_BUDGET_NS = 8_000_000L;
+    private static final int SLICE_CHUNK = 256;
 
     public static void processAnsiCodesAsync(@NotNull Editor editor, @Nullable Project project) {
-        String text = editor.getDocument().getText();
-        
-        if (text.length() < LARGE_FILE_THRESHOLD) {
-            processSync(editor);
+        ViewportAnsiHighlighter viewport = ViewportAnsiHighlighter.getInstance(editor);
+        if (viewport != null) {
+            viewport.rebuild();
             return;
         }
+        if (project == null) return;
+        process(AnsiRenderModelService.getInstance(project).getOrCreate(editor));
+    }
+
+    /**
+     * Full pass over the model's document: synchronous if {@link AnsiRenderController} expects it to
+     * finish within the target latency, in the background otherwise.
+     */
+    static void process(@NotNull AnsiRenderModel model) {
+        Document document = model.getDocument();
+        if (!AnsiRenderController.getInstance().runsInBackground(document, document.getTextLength())) {
+            model.highlightAll();
+            return;
+        }
+        AnsiHighlightSession session = model.getSession();
+        session.invalidate();
+        submit(model, new long[0], session.nextGeneration());
+    }
+
+    /**
+     * Parses and applies only the lines from {@code firstLine} on, continuing from the recorded end
+     * state of the line before it. Used when a large block of text was appended to the document.
+     * The session stays valid meanwhile, so an edit made before the pass completes is still tracked.
+     * Only one such pass runs at a time; lines appended meanwhile are parsed by the next one.
+     */
+    static void processAppendAsync(@NotNull AnsiRenderModel model, int firstLine) {
+        AnsiHighlightSession session = model.getSession();
+        long[] prefixStates = new long[firstLine];
+        for (int line = 0; line < firstLine; line++) {
+            prefixStates[line] = session.getLineEndState(line);
+        }
+        submit(model, prefixStates, session.startAppendPass());
+    }
 
+    private static void submit(@NotNull AnsiRenderModel model, long @NotNull [] prefixStates, int generation) {
+        AnsiHighlightSession session = model.getSession();
+        Document document = model.getDocument();
+        int rewriteCount = session.getRewriteCount();
         ProgressManager.getInstance().run(new Task.Backgroundable(
-                project,
+                model.getProject(),
                 "Processing ANSI codes...",
                 true
         ) {
@@ -29,20 +75,134 @@ public class AsyncAnsiProcessor {
             public void run(@NotNull ProgressIndicator indicator) {
                 indicator.setIndeterminate(false);
                 indicator.setText("Analyzing ANSI codes...");
-                
-                ApplicationManager.getApplication().invokeLater(() -> {
-                    if (!editor.isDisposed()) {
-                        processSync(editor);
-                        indicator.setFraction(1.0);
-                    }
-                });
+
+                // A full pass over an unchanged file on disk may be served from the sidecar cache
+                AnsiPlanCache.CacheKey key = prefixStates.length == 0
+                        ? AnsiPlanCache.keyOf(document, indicator) : null;
+                AnsiRenderPlan cached = key != null ? AnsiPlanCache.load(key) : null;
+
+                // Restarted automatically if a write action interrupts it
+                long parseStart = System.nanoTime();
+                AnsiRenderPlan plan = cached != null ? cached
+                        : ReadAction.nonBlocking(() -> AnsiRenderPlan.compute(document, indicator, prefixStates))
+                        .expireWhen(() -> model.isDisposed() || session.getGeneration() != generation)
+                        .wrapProgress(indicator)
+                        .executeSynchronously();
+                long parseNanos = System.nanoTime() - parseStart;
+                indicator.setFraction(1.0);
+                if (cached == null && key != null) {
+                    AnsiPlanCache.store(key, plan);
+                }
+
+                // A cached plan says nothing about parsing speed
+                PlanApplier applier = new PlanApplier(model, plan, generation, rewriteCount, cached == null ? parseNanos : -1);
+                ApplicationManager.getApplication().invokeLater(applier);
+            }
+
+            @Override
+            public void onCancel() {
+                session.endAppendPass(generation);
+            }
+
+            @Override
+            public void onThrowable(@NotNull Throwable error) {
+                super.onThrowable(error);
+                session.endAppendPass(generation);
             }
         });
     }
 
-    private static void processSync(Editor editor) {
-        if (editor instanceof com.intellij.openapi.editor.ex.EditorEx) {
-            new AnsiLogFileOpenListener().applyAnsiHighlighting(editor);
+    /** Applies a plan computed elsewhere, superseding any pass still running for the model. Call on the EDT. */
+    static void applyPlan(@NotNull AnsiRenderModel model, @NotNull AnsiRenderPlan plan) {
+        AnsiHighlightSession session = model.getSession();
+        new PlanApplier(model, plan, session.nextGeneration(), session.getRewriteCount(), -1).run();
+    }
+
+    /**
+     * Applies a plan on the EDT one time-budgeted slice per event. Each slice adds the highlighters and
+     * folds of a contiguous offset range, then re-posts itself. A slice gives up if the document was
+     * changed other than by appending since the pass was submitted; the edit that changed it schedules
+     * a fresh pass. Text appended meanwhile does not affect the plan's range; it is left dirty and
+     * parsed by a follow-up pass once the plan is applied. The parse time plus
+     * the time spent in slices is reported to {@link AnsiRenderController} as the cost of the pass.
+     */
+    private static final class PlanApplier implements Runnable {
+        private final AnsiRenderModel model;
+        private final AnsiRenderPlan plan;
+        private final int generation;
+        private final int rewriteCount;
+        private boolean started;
+        private int run;
+        private int escape;
+        private int foldStart;
+        /** Work done for the pass so far, or -1 if it is not measured. */
+        private long workNanos;
+
+        PlanApplier(AnsiRenderModel model, AnsiRenderPlan plan, int generation, int rewriteCount, long parseNanos) {
+            this.model = model;
+            this.plan = plan;
+            this.generation = generation;
+            this.rewriteCount = rewriteCount;
+            this.workNanos = parseNanos;
+        }
+
+        @Override
+        public void run() {
+            AnsiHighlightSession session = model.getSession();
+            if (model.isDisposed() || session.getGeneration() != generation) return;
+            if (session.getRewriteCount() != rewriteCount) {
+                session.endAppendPass(generation);
+                return;
+            }
+
+            MarkupModel markup = model.getMarkup();
+            if (!started) {
+                AnsiLogFileOpenListener.removeAnsiHighlighters(markup, plan.startOffset, plan.textLength);
+                foldStart = plan.startOffset;
+                started = true;
+            }
+            // The editor-highlighter backend colors the text itself; only the folds are ours
+            boolean foldsOnly = model.isLexerBackend();
+            int runCount = plan.runCount();
+            int escapeCount = plan.escapes.length / 2;
+            long sliceStart = System.nanoTime();
+            long deadline = sliceStart + SLICE_BUDGET_NS;
+            while (true) {
+                IntArrayList escapes = new IntArrayList();
+                for (int i = 0; i < SLICE_CHUNK && (run < runCount || escape < escapeCount); i++) {
+                    int runStart = run < runCount ? plan.runs[2 * run] : Integer.MAX_VALUE;
+                    int escapeStart = escape < escapeCount ? plan.escapes[2 * escape] : Integer.MAX_VALUE;
+                    if (runStart <= escapeStart) {
+                        if (!foldsOnly) AnsiLogFileOpenListener.addHighlighter(markup, runStart, plan.runs[2 * run + 1], plan.runStyles[run]);
+                        run++;
+                    } else {
+                        escapes.add(escapeStart);
+                        escapes.add(plan.escapes[2 * escape + 1]);
+                        escape++;
+                    }
+                }
+                boolean done = run == runCount && escape == escapeCount;
+                int foldEnd = done ? plan.textLength
+                        : Math.min(run < runCount ? plan.runs[2 * run] : Integer.MAX_VALUE,
+                                   escape < escapeCount ? plan.escapes[2 * escape] : Integer.MAX_VALUE);
+                model.updateFolds(foldStart, foldEnd, escapes);
+                foldStart = foldEnd;
+                if (done) {
+                    session.endAppendPass(generation);
+                    session.reset(plan.lineEndStates, model.getDocument(), plan.textLength);
+                    // A folds-only pass says nothing about the cost of a markup pass
+                    if (workNanos >= 0 && !foldsOnly) {
+                        workNanos += System.nanoTime() - sliceStart;
+                        AnsiRenderController.getInstance().recordFullPass(model.getDocument(), plan.textLength - plan.startOffset, workNanos);
+                    }
+                    model.measure();
+                    if (session.hasDirtyLines()) model.update();
+                    return;
+                }
+                if (System.nanoTime() > deadline) break;
+            }
+            if (workNanos >= 0) workNanos += System.nanoTime() - sliceStart;
+            ApplicationManager.getApplication().invokeLater(this);
         }
     }
 }
@@ -92,7 +92,7 @@ public class BatchLogProcessor {
     
     private static String applyOperation(@NotNull String content, @NotNull String operation) {
         if (operation.equals("strip_ansi")) {
-            return content.replaceAll("(?:\u001B|\\u001B)\\[[0-9;]*m", "");
+            return AnsiStripper.strip(content);
         } else if (operation.equals("normalize")) {
             return normalizeLogLines(content);
         } else if (operation.equals("deduplicate")) {
@@ -106,9 +106,8 @@ public class BatchLogProcessor {
     private static String normalizeLogLines(@NotNull String content) {
         StringBuilder sb = new StringBuilder();
         for (String line : content.split("\n")) {
-            String normalized = line
+            String normalized = AnsiStripper.strip(line)
                     .replaceAll("\\s+", " ")
-                    .replaceAll("(?:\u001B|\\u001B)\\[[0-9;]*m", "")
                     .trim();
             if (!normalized.isEmpty()) {
                 sb.append(normalized).append("\n");
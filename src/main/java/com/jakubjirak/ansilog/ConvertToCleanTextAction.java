@@ -15,7 +15,7 @@ public class ConvertToCleanTextAction extends AnAction {
         if (editor == null) return;
         
         String text = editor.getDocument().getText();
-        String cleanText = text.replaceAll("(?:\\u001B|\\\\u001B)\\[[0-9;]*m", "");
+        String cleanText = AnsiStripper.strip(text);
         
         if (text.equals(cleanText)) {
             Messages.showInfoMessage(e.getProject(), "No ANSI codes found.", "ANSI Log Viewer");
@@ -36,7 +36,6 @@ public class ConvertToCleanTextAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        String text = editor != null ? editor.getDocument().getText() : "";
-        e.getPresentation().setEnabled(!text.isEmpty() && (text.contains("\u001B") || text.contains("\\u001B")));
+        e.getPresentation().setEnabled(editor != null && AnsiDocumentFacts.getInstance().hasAnsi(editor.getDocument()));
     }
 }
@@ -20,8 +20,8 @@ public class CopilotContextBuilder {
         int ansiCodeCount = 0;
         
         for (String line : lines) {
-            String cleanLine = line.replaceAll("(?:\\u001B|\\\\u001B)\\[[0-9;]*m", "");
-            ansiCodeCount += (int) AnsiPatternUtil.ANSI_PATTERN.matcher(line).results().count();
+            String cleanLine = AnsiStripper.strip(line);
+            ansiCodeCount += AnsiSgrLexer.count(line, 0, line.length());
             
             if (cleanLine.toUpperCase().contains("ERROR")) errorLines.add(cleanLine);
             else if (cleanLine.toUpperCase().contains("WARN")) warnLines.add(cleanLine);
@@ -52,7 +52,7 @@ public class CopilotContextBuilder {
         context.append("SAMPLE_LINES:\n");
         int sampleSize = Math.min(10, lines.length);
         for (int i = 0; i < sampleSize; i++) {
-            String clean = lines[i].replaceAll("(?:\\u001B|\\\\u001B)\\[[0-9;]*m", "");
+            String clean = AnsiStripper.strip(lines[i]);
             context.append(i + 1).append(": ").append(clean).append("\n");
         }
         
@@ -62,7 +62,7 @@ public class CopilotContextBuilder {
     public static String buildSelectedContext(@NotNull String selectedText) {
         StringBuilder context = new StringBuilder();
         context.append("SELECTED_LOG_SECTION:\n");
-        context.append(selectedText.replaceAll("(?:\\u001B|\\\\u001B)\\[[0-9;]*m", ""));
+        context.append(AnsiStripper.strip(selectedText));
         return context.toString();
     }
     
@@ -74,7 +74,7 @@ public class CopilotContextBuilder {
         
         List<String> errorLines = new ArrayList<>();
         for (String line : lines) {
-            String clean = line.replaceAll("(?:\\u001B|\\\\u001B)\\[[0-9;]*m", "");
+            String clean = AnsiStripper.strip(line);
             if (clean.toUpperCase().contains("ERROR")) {
                 errorLines.add(clean);
             }
@@ -19,14 +19,13 @@ public class CopyCleanTextAction extends AnAction {
             selectedText = editor.getDocument().getText();
         }
         
-        String cleanText = selectedText.replaceAll("(?:\\u001B|\\\\u001B)\\[[0-9;]*m", "");
+        String cleanText = AnsiStripper.strip(selectedText);
         CopyPasteManager.getInstance().setContents(new StringSelection(cleanText));
     }
 
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        String text = editor != null ? editor.getDocument().getText() : "";
-        e.getPresentation().setEnabled(!text.isEmpty() && (text.contains("\u001B") || text.contains("\\u001B")));
+        e.getPresentation().setEnabled(editor != null && AnsiDocumentFacts.getInstance().hasAnsi(editor.getDocument()));
     }
 }
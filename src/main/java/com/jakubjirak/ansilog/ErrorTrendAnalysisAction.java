@@ -2,9 +2,11 @@ package com.jakubjirak.ansilog;
 
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.actionSystem.PlatformDataKeys;
 import com.intellij.openapi.ui.Messages;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.jetbrains.annotations.NotNull;
 import java.util.*;
 
@@ -14,21 +16,21 @@ public class ErrorTrendAnalysisAction extends AnAction {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
         if (editor == null) return;
         
-        String text = editor.getDocument().getText();
-        String[] lines = text.split("\n");
+        Document doc = editor.getDocument();
+        LogLineIndex index = LogLineIndex.getInstance();
+        int lineCount = index.getLineCount(doc);
+        IntArrayList errorLines = index.linesWith(doc, LogLineIndex.Severity.ERROR);
         
         StringBuilder analysis = new StringBuilder();
         analysis.append("ERROR_TREND_ANALYSIS:\n\n");
         
         // Divide into chunks and analyze
-        int chunkSize = Math.max(1, lines.length / 5);
+        int chunkSize = Math.max(1, lineCount / 5);
         int[] chunkErrors = new int[5];
         
-        for (int i = 0; i < lines.length; i++) {
-            if (lines[i].contains("ERROR")) {
-                int chunkIndex = Math.min(4, i / chunkSize);
-                chunkErrors[chunkIndex]++;
-            }
+        for (int i = 0; i < errorLines.size(); i++) {
+            int chunkIndex = Math.min(4, errorLines.getInt(i) / chunkSize);
+            chunkErrors[chunkIndex]++;
         }
         
         analysis.append("ERROR_COUNT_BY_CHUNK:\n");
@@ -94,7 +96,6 @@ public class ErrorTrendAnalysisAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        String text = editor != null ? editor.getDocument().getText() : "";
-        e.getPresentation().setEnabled(!text.isEmpty() && text.contains("ERROR"));
+        e.getPresentation().setEnabled(editor != null && AnsiDocumentFacts.getInstance().hasError(editor.getDocument()));
     }
 }
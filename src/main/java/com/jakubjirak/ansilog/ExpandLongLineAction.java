@@ -0,0 +1,27 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.PlatformDataKeys;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.FoldRegion;
+import org.jetbrains.annotations.NotNull;
+
+/** Unfolds the tail of the long line at the caret; the tail is shown as plain text. */
+public class ExpandLongLineAction extends AnAction {
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Editor editor = e.getData(PlatformDataKeys.EDITOR);
+        if (editor == null) return;
+        FoldRegion tail = LongLineGuard.findTail(editor, editor.getCaretModel().getOffset());
+        if (tail == null) return;
+        editor.getFoldingModel().runBatchFoldingOperation(() -> tail.setExpanded(true));
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        Editor editor = e.getData(PlatformDataKeys.EDITOR);
+        FoldRegion tail = editor != null ? LongLineGuard.findTail(editor, editor.getCaretModel().getOffset()) : null;
+        e.getPresentation().setEnabledAndVisible(tail != null && !tail.isExpanded());
+    }
+}
@@ -13,7 +13,6 @@ import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.regex.Matcher;
 
 public class ExportToHtmlAction extends AnAction {
     @Override
@@ -46,18 +45,19 @@ public class ExportToHtmlAction extends AnAction {
         html.append("body { background-color: #1e1e1e; color: #d4d4d4; font-family: monospace; white-space: pre-wrap; word-wrap: break-word; padding: 20px; }\n");
         html.append("</style>\n</head>\n<body>\n");
         
-        Matcher matcher = AnsiPatternUtil.ANSI_PATTERN.matcher(text);
+        AnsiSgrLexer lexer = new AnsiSgrLexer();
+        lexer.reset(text, 0, text.length());
         
         int lastIndex = 0;
         String currentColor = "#d4d4d4";
         
-        while (matcher.find()) {
-            String textBefore = text.substring(lastIndex, matcher.start());
+        while (lexer.next()) {
+            String textBefore = text.substring(lastIndex, lexer.getStart());
             html.append(escapeHtml(textBefore));
             
-            String seq = matcher.group();
+            String seq = text.substring(lexer.getStart(), lexer.getEnd());
             currentColor = parseAnsiCode(seq, currentColor);
-            lastIndex = matcher.end();
+            lastIndex = lexer.getEnd();
         }
         
         html.append(escapeHtml(text.substring(lastIndex)));
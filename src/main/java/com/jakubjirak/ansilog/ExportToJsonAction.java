@@ -2,6 +2,7 @@ package com.jakubjirak.ansilog;
 
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.actionSystem.PlatformDataKeys;
 import com.intellij.openapi.fileChooser.FileChooserFactory;
@@ -24,20 +25,22 @@ public class ExportToJsonAction extends AnAction {
         if (result == null) return;
         
         try (BufferedWriter writer = new BufferedWriter(new FileWriter(result.getFile()))) {
-            String text = editor.getDocument().getText();
-            String[] lines = text.split("\n");
+            Document doc = editor.getDocument();
+            LogSnapshot log = LogSnapshot.of(doc);
+            LogLineIndex index = LogLineIndex.getInstance();
             
             writer.write("{\n  \"logs\": [\n");
             
-            for (int i = 0; i < lines.length; i++) {
-                String line = lines[i];
-                String cleanLine = line.replaceAll("(?:\\u001B|\\\\u001B)\\[[0-9;]*m", "");
-                long ansiCount = AnsiPatternUtil.ANSI_PATTERN.matcher(line).results().count();
+            AnsiStripper stripper = new AnsiStripper();
+            for (int i = 0; i < log.getLineCount(); i++) {
+                String cleanLine = stripper.strip(log.getText(), log.getLineStart(i), log.getLineEnd(i)).toString();
+                long ansiCount = index.getAnsiCount(doc, i);
                 
-                String logLevel = "INFO";
-                if (cleanLine.toUpperCase().contains("ERROR")) logLevel = "ERROR";
-                else if (cleanLine.toUpperCase().contains("WARN")) logLevel = "WARN";
-                else if (cleanLine.toUpperCase().contains("DEBUG")) logLevel = "DEBUG";
+                LogLineIndex.Severity severity = index.getSeverity(doc, i);
+                String logLevel = switch (severity) {
+                    case ERROR, WARN, DEBUG -> severity.name();
+                    default -> "INFO";
+                };
                 
                 writer.write(String.format("    {\n" +
                                 "      \"line\": %d,\n" +
@@ -50,7 +53,7 @@ public class ExportToJsonAction extends AnAction {
                         logLevel,
                         ansiCount));
                 
-                if (i < lines.length - 1) writer.write(",");
+                if (i < log.getLineCount() - 1) writer.write(",");
                 writer.write("\n");
             }
             
@@ -2,11 +2,13 @@ package com.jakubjirak.ansilog;
 
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.actionSystem.PlatformDataKeys;
 import com.intellij.openapi.ui.DialogWrapper;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.ui.components.JBList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -24,17 +26,16 @@ public class FilterByLogLevelAction extends AnAction {
         if (choice < 0) return;
         
         String selectedLevel = levels[choice];
-        String text = editor.getDocument().getText();
-        String[] lines = text.split("\n");
+        Document doc = editor.getDocument();
+        LogSnapshot log = LogSnapshot.of(doc);
+        IntArrayList lines = LogLineIndex.getInstance().linesWith(doc, LogLineIndex.Severity.valueOf(selectedLevel));
         
         StringBuilder filtered = new StringBuilder();
-        int count = 0;
+        int count = lines.size();
         
-        for (String line : lines) {
-            if (line.contains(selectedLevel) || line.contains(selectedLevel.toLowerCase())) {
-                filtered.append(line).append("\n");
-                count++;
-            }
+        // Only the preview is copied out of the document
+        for (int i = 0; i < count && filtered.length() <= 500; i++) {
+            filtered.append(log.getLineView(lines.getInt(i))).append("\n");
         }
         
         String result = String.format("Found %d lines with '%s' level\n\nPreview:\n%s",
@@ -13,11 +13,11 @@ public class FilterErrorLinesAction extends AnAction {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
         if (editor == null) return;
         
-        String text = editor.getDocument().getText();
-        String[] lines = text.split("\n");
+        LogSnapshot log = LogSnapshot.of(editor.getDocument());
         
         StringBuilder errorLines = new StringBuilder();
-        for (String line : lines) {
+        for (int i = 0; i < log.getLineCount(); i++) {
+            String line = log.getLine(i);
             // Lines with error color code (31 = red foreground)
             if ((line.contains("\u001B[") || line.contains("\\u001B[")) && (line.contains("31m") || line.contains("1;31m"))) {
                 errorLines.append(line).append("\n");
@@ -34,7 +34,6 @@ public class FilterErrorLinesAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        String text = editor != null ? editor.getDocument().getText() : "";
-        e.getPresentation().setEnabled(!text.isEmpty() && (text.contains("\u001B") || text.contains("\\u001B")));
+        e.getPresentation().setEnabled(editor != null && AnsiDocumentFacts.getInstance().hasAnsi(editor.getDocument()));
     }
 }
@@ -14,14 +14,14 @@ public class FindDuplicateLinesAction extends AnAction {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
         if (editor == null) return;
         
-        String text = editor.getDocument().getText();
-        String[] lines = text.split("\n");
+        LogSnapshot log = LogSnapshot.of(editor.getDocument());
         
         Map<String, Integer> lineCount = new HashMap<>();
         List<String> duplicates = new ArrayList<>();
         
-        for (String line : lines) {
-            String cleanLine = line.replaceAll("(?:\u001B|\\u001B)\\[[0-9;]*m", "").trim();
+        AnsiStripper stripper = new AnsiStripper();
+        for (int i = 0; i < log.getLineCount(); i++) {
+            String cleanLine = stripper.strip(log.getText(), log.getLineStart(i), log.getLineEnd(i)).toString().trim();
             if (!cleanLine.isEmpty()) {
                 int count = lineCount.getOrDefault(cleanLine, 0);
                 lineCount.put(cleanLine, count + 1);
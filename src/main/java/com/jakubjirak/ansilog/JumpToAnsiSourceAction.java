@@ -0,0 +1,40 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.PlatformDataKeys;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.SelectionModel;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.OpenFileDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+
+/** Opens the original log at the caret and selection of a clean view. */
+public class JumpToAnsiSourceAction extends AnAction {
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Editor editor = e.getData(PlatformDataKeys.EDITOR);
+        VirtualFile file = e.getData(PlatformDataKeys.VIRTUAL_FILE);
+        Project project = e.getProject();
+        if (editor == null || file == null || project == null) return;
+        AnsiCleanView view = AnsiCleanView.getInstance(file);
+        if (view == null || !view.getSource().isValid()) return;
+
+        AnsiOffsetMap map = view.getOffsetMap();
+        SelectionModel selection = editor.getSelectionModel();
+        int caret = map.toRaw(editor.getCaretModel().getOffset());
+        Editor target = FileEditorManager.getInstance(project)
+                .openTextEditor(new OpenFileDescriptor(project, view.getSource(), caret), true);
+        if (target != null && selection.hasSelection()) {
+            target.getSelectionModel().setSelection(map.toRaw(selection.getSelectionStart()), map.toRaw(selection.getSelectionEnd()));
+        }
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        VirtualFile file = e.getData(PlatformDataKeys.VIRTUAL_FILE);
+        e.getPresentation().setEnabledAndVisible(file != null && AnsiCleanView.getInstance(file) != null);
+    }
+}
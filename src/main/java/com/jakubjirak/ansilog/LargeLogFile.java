@@ -0,0 +1,414 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.progress.ProgressIndicator;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Read-only access to a log file too large for a document. The file is memory-mapped in pages on
+ * demand, and only a few recently used pages stay mapped. One background pass over the file fills an
+ * {@link OffHeapLineIndex} with the start of every line and the SGR style at the start of each index
+ * block, so the heap holds little more than the decoded visible lines. A line is found by number or
+ * offset in the index and colored from the style of its block.
+ * <p>
+ * Escape sequences and line separators are ASCII, so the file is scanned as bytes. Only displayed lines
+ * are decoded, as UTF-8.
+ */
+public final class LargeLogFile implements Closeable {
+    /** Longest byte range read at once. */
+    private static final int MAX_VIEW = 8 << 20;
+    /** Pages start at multiples of this size and extend {@link #MAX_VIEW} past it, so every range fits in one page. */
+    private static final long PAGE_SIZE = 64L << 20;
+    private static final int MAX_PAGES = 4;
+    /** Bytes of a line decoded for display; the rest of a longer line is not shown. */
+    private static final int MAX_LINE_BYTES = 64 << 10;
+    /** Without an indexed block start this close, a style is not worth computing. */
+    private static final long MAX_STYLE_SCAN = 16L << 20;
+    private static final int TAB_WIDTH = 4;
+    /** Over-long lines whose end is remembered. */
+    private static final int MAX_LONG_LINES = 1024;
+    /** End of a line not found yet; see {@link #resolveLine}. */
+    public static final long UNKNOWN = -1;
+
+    private final FileChannel channel;
+    private final long size;
+    private final Map<Long, ByteBuffer> pages = new LinkedHashMap<>(MAX_PAGES, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, ByteBuffer> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    private final OffHeapLineIndex index = new OffHeapLineIndex();
+    /** Next line start and the style there, by start of a line longer than {@link #MAX_LINE_BYTES}; recently used first. */
+    private final Map<Long, long[]> longLines = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest) {
+            return size() > MAX_LONG_LINES;
+        }
+    };
+    private volatile long lineCount = -1;
+    /** Bytes the index pass has scanned; every line starting before this offset is indexed. */
+    private volatile long indexedTo;
+    private volatile boolean closed;
+
+    private LargeLogFile(FileChannel channel, long size) {
+        this.channel = channel;
+        this.size = size;
+    }
+
+    public static @NotNull LargeLogFile open(@NotNull Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        return new LargeLogFile(channel, channel.size());
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /** True once {@link #buildIndex} has finished; line numbers are only known from then on. */
+    public boolean isIndexed() {
+        return lineCount >= 0;
+    }
+
+    /** Number of lines, or -1 before the index is built. A trailing line separator does not start another line. */
+    public long getLineCount() {
+        return lineCount;
+    }
+
+    /**
+     * Indexes all lines in one pass over the file. Lines already passed can be colored while the pass
+     * runs, and the ends of over-long lines it passes are remembered.
+     */
+    public void buildIndex(@NotNull ProgressIndicator indicator) throws IOException {
+        AnsiSgrLexer lexer = new AnsiSgrLexer();
+        long style = AnsiStyle.DEFAULT;
+        long pos = 0;
+        long lineStart = 0;
+        if (size > 0) index.add(0, style);
+        while (pos < size) {
+            if (closed) return;
+            indicator.checkCanceled();
+            indicator.setFraction((double) pos / size);
+            int length = (int) Math.min(MAX_VIEW, size - pos);
+            Bytes window = new Bytes(channel.map(FileChannel.MapMode.READ_ONLY, pos, length), 0, length);
+            // Windows end after a line separator, so no escape sequence is split between two of them
+            int end = pos + length < size ? window.lastIndexOf('\n', length) + 1 : length;
+            if (end == 0) end = length;
+            lexer.reset(window, 0, end);
+            int scanned = 0;
+            while (lexer.next()) {
+                lineStart = addLines(window, scanned, lexer.getStart(), pos, style, lineStart);
+                style = AnsiStyle.apply(style, lexer.getParams(), lexer.getParamCount());
+                scanned = lexer.getEnd();
+            }
+            lineStart = addLines(window, scanned, end, pos, style, lineStart);
+            pos += end;
+            indexedTo = pos;
+        }
+        lineCount = index.getLineCount();
+    }
+
+    /** Indexes the lines starting in {@code [from, to)} of the window; returns the start of the last line. */
+    private long addLines(Bytes window, int from, int to, long base, long style, long lineStart) {
+        for (int i = from; i < to; i++) {
+            if (window.charAt(i) != '\n') continue;
+            long next = base + i + 1;
+            if (next - 1 - lineStart > MAX_LINE_BYTES) rememberLongLine(lineStart, next, style);
+            // A trailing separator does not start another line
+            if (next < size) index.add(next, style);
+            lineStart = next;
+        }
+        return lineStart;
+    }
+
+    /** Start offset of a line; lines not indexed yet are found by scanning on from the last indexed one. */
+    public long getLineStart(long line) {
+        long indexed = index.getLineCount();
+        if (line < indexed) return index.getLineStart(line);
+        long offset = indexed > 0 ? index.getLineStart(indexed - 1) : 0;
+        for (long l = Math.max(0, indexed - 1); l < line && offset < size; l++) {
+            offset = getNextLineStart(offset);
+        }
+        return offset;
+    }
+
+    /** Number of the line containing the offset; lines not indexed yet are counted on from the last indexed one. */
+    public long getLineNumber(long offset) {
+        if (offset < indexedTo) return index.getLineNumber(offset);
+        long line = Math.max(0, index.getLineNumber(offset));
+        long pos = index.getLineCount() > 0 ? index.getLineStart(line) : 0;
+        while (pos < offset) {
+            int length = (int) Math.min(MAX_VIEW, offset - pos);
+            Bytes bytes = view(pos, length);
+            for (int i = 0; i < length; i++) {
+                if (bytes.charAt(i) == '\n') line++;
+            }
+            pos += length;
+        }
+        return line;
+    }
+
+    /**
+     * Start of the line containing the offset. Where the index has not reached yet, looks back no further
+     * than {@link #MAX_LINE_BYTES} and the last indexed line; inside a longer line it returns the offset
+     * that far back, so that the line is paged through rather than read whole.
+     */
+    public long getLineStartContaining(long offset) {
+        offset = Math.min(offset, size);
+        if (offset < indexedTo) return index.getLineStart(index.getLineNumber(offset));
+        long indexedLine = index.getLineNumber(offset);
+        long floor = Math.max(indexedLine >= 0 ? index.getLineStart(indexedLine) : 0, offset - MAX_LINE_BYTES);
+        int length = (int) (offset - floor);
+        int i = view(floor, length).lastIndexOf('\n', length);
+        return i >= 0 ? floor + i + 1 : floor;
+    }
+
+    /** Start of the line after the one starting at {@code lineStart}, or the file size for the last line; scans the whole line. */
+    private long getNextLineStart(long lineStart) {
+        long pos = lineStart;
+        while (pos < size) {
+            int length = (int) Math.min(MAX_VIEW, size - pos);
+            Bytes bytes = view(pos, length);
+            for (int i = 0; i < length; i++) {
+                if (bytes.charAt(i) == '\n') return pos + i + 1;
+            }
+            pos += length;
+        }
+        return size;
+    }
+
+    /**
+     * Style in effect at the start of a line, parsed on from the start of its index block. While the
+     * index has not reached the line yet, lines far from any indexed block start in the default style.
+     */
+    public long getStyleAt(long lineStart) {
+        int block = index.findBlock(lineStart);
+        long from = block >= 0 ? index.getBlockStart(block) : 0;
+        long style = block >= 0 ? index.getBlockMark(block) : AnsiStyle.DEFAULT;
+        if (lineStart - from > MAX_STYLE_SCAN) return AnsiStyle.DEFAULT;
+        return advanceStyle(style, from, lineStart);
+    }
+
+    /**
+     * Start of the line after the one starting at {@code lineStart}, looking no further than
+     * {@link #MAX_LINE_BYTES}. Returns {@link #UNKNOWN} for a longer line whose end has not been
+     * remembered yet by the index pass or {@link #resolveLine}.
+     */
+    public long findNextLineStart(long lineStart) {
+        int length = (int) Math.min(MAX_LINE_BYTES + 1L, size - lineStart);
+        int newline = view(lineStart, length).indexOf('\n', length);
+        if (newline >= 0) return lineStart + newline + 1;
+        if (lineStart + length == size) return size;
+        long[] known = longLine(lineStart);
+        return known != null ? known[0] : UNKNOWN;
+    }
+
+    /**
+     * Finds and remembers the end of an over-long line and the style there, so that {@link #readLine}
+     * can continue past it. Scans the whole line, so call it off the EDT.
+     */
+    public void resolveLine(long lineStart, long style) {
+        if (longLine(lineStart) != null) return;
+        long next = getNextLineStart(lineStart);
+        rememberLongLine(lineStart, next, advanceStyle(style, lineStart, next));
+    }
+
+    /**
+     * Reads the line starting at {@code lineStart}, which begins in {@code style}. Reads at most
+     * {@link #MAX_LINE_BYTES}; the end of a longer line may be {@link #UNKNOWN}.
+     */
+    public @NotNull Line readLine(long lineStart, long style) {
+        long next = findNextLineStart(lineStart);
+        long contentEnd = next == UNKNOWN ? lineStart + MAX_LINE_BYTES + 1
+                : next > lineStart && byteAt(next - 1) == '\n' ? next - 1 : next;
+        int length = (int) Math.min(MAX_LINE_BYTES, contentEnd - lineStart);
+        Bytes bytes = view(lineStart, length);
+
+        StringBuilder text = new StringBuilder(length);
+        IntArrayList runStarts = new IntArrayList();
+        LongArrayList runStyles = new LongArrayList();
+        runStarts.add(0);
+        runStyles.add(style);
+        AnsiSgrLexer lexer = new AnsiSgrLexer();
+        lexer.reset(bytes, 0, length);
+        long current = style;
+        int kept = 0;
+        while (lexer.next()) {
+            appendExpanded(text, bytes.decode(kept, lexer.getStart()));
+            current = AnsiStyle.apply(current, lexer.getParams(), lexer.getParamCount());
+            runStarts.add(text.length());
+            runStyles.add(current);
+            kept = lexer.getEnd();
+        }
+        appendExpanded(text, bytes.decode(kept, length));
+        if (text.length() > 0 && text.charAt(text.length() - 1) == '\r') {
+            text.setLength(text.length() - 1);
+            // Runs started by sequences after the carriage return begin at the end of the shorter text
+            for (int i = 0; i < runStarts.size(); i++) runStarts.set(i, Math.min(runStarts.getInt(i), text.length()));
+        }
+
+        boolean truncated = contentEnd - lineStart > length;
+        long[] known = truncated && next != size ? longLine(lineStart) : null;
+        // After the last line, and while the end is unknown, the end style is not used
+        long endStyle = known != null ? known[1] : current;
+        return new Line(text.toString(), runStarts.toIntArray(), runStyles.toLongArray(), next, endStyle, truncated);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        synchronized (this) {
+            pages.clear();
+        }
+        channel.close();
+    }
+
+    /** Style after the lines in {@code [from, to)}, which both are line starts. */
+    private long advanceStyle(long style, long from, long to) {
+        AnsiSgrLexer lexer = new AnsiSgrLexer();
+        long pos = from;
+        while (pos < to) {
+            int length = (int) Math.min(MAX_VIEW, to - pos);
+            Bytes bytes = view(pos, length);
+            int end = pos + length < to ? bytes.lastIndexOf('\n', length) + 1 : length;
+            if (end == 0) end = length;
+            lexer.reset(bytes, 0, end);
+            while (lexer.next()) style = AnsiStyle.apply(style, lexer.getParams(), lexer.getParamCount());
+            pos += end;
+        }
+        return style;
+    }
+
+    private long @Nullable [] longLine(long lineStart) {
+        synchronized (longLines) {
+            return longLines.get(lineStart);
+        }
+    }
+
+    private void rememberLongLine(long lineStart, long next, long style) {
+        synchronized (longLines) {
+            longLines.put(lineStart, new long[]{next, style});
+        }
+    }
+
+    private int byteAt(long offset) {
+        return view(offset, 1).charAt(0);
+    }
+
+    /** Bytes {@code [from, from + length)}; {@code length} must not exceed {@link #MAX_VIEW}. */
+    private synchronized Bytes view(long from, int length) {
+        long index = from / PAGE_SIZE;
+        ByteBuffer page = pages.get(index);
+        if (page == null) {
+            long start = index * PAGE_SIZE;
+            try {
+                page = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(size - start, PAGE_SIZE + MAX_VIEW));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            pages.put(index, page);
+        }
+        return new Bytes(page, (int) (from - index * PAGE_SIZE), length);
+    }
+
+    private static void appendExpanded(StringBuilder text, String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '\t') text.append(" ".repeat(TAB_WIDTH));
+            else text.append(c);
+        }
+    }
+
+    /** A decoded line with its style runs in character offsets. */
+    public static final class Line {
+        final String text;
+        /** Start of each run; a run extends to the next start or the end of the text. */
+        final int[] runStarts;
+        final long[] runStyles;
+        /** Offset of the next line, the file size, or {@link #UNKNOWN} for a truncated line not resolved yet. */
+        final long end;
+        /** Style in effect at the start of the next line. */
+        final long endStyle;
+        /** True if only the start of the line was decoded. */
+        final boolean truncated;
+
+        Line(String text, int[] runStarts, long[] runStyles, long end, long endStyle, boolean truncated) {
+            this.text = text;
+            this.runStarts = runStarts;
+            this.runStyles = runStyles;
+            this.end = end;
+            this.endStyle = endStyle;
+            this.truncated = truncated;
+        }
+    }
+
+    /** Mapped bytes seen as ISO-8859-1 characters, so that {@link AnsiSgrLexer} can scan them in place. */
+    private static final class Bytes implements CharSequence {
+        private final ByteBuffer buffer;
+        private final int from;
+        private final int length;
+
+        Bytes(ByteBuffer buffer, int from, int length) {
+            this.buffer = buffer;
+            this.from = from;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (buffer.get(from + index) & 0xFF);
+        }
+
+        @Override
+        public @NotNull CharSequence subSequence(int start, int end) {
+            return new Bytes(buffer, from + start, end - start);
+        }
+
+        /** Index of the first {@code c} before {@code end}, or -1. */
+        int indexOf(char c, int end) {
+            for (int i = 0; i < end; i++) {
+                if (charAt(i) == c) return i;
+            }
+            return -1;
+        }
+
+        /** Index of the last {@code c} before {@code end}, or -1. */
+        int lastIndexOf(char c, int end) {
+            for (int i = end - 1; i >= 0; i--) {
+                if (charAt(i) == c) return i;
+            }
+            return -1;
+        }
+
+        String decode(int start, int end) {
+            byte[] bytes = new byte[end - start];
+            buffer.get(from + start, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public @NotNull String toString() {
+            byte[] bytes = new byte[length];
+            buffer.get(from, bytes);
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
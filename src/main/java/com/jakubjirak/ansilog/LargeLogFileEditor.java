@@ -0,0 +1,108 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.fileEditor.FileEditor;
+import com.intellij.openapi.fileEditor.FileEditorState;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.UserDataHolderBase;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.ui.components.JBLabel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+
+/** Read-only editor tab for a log too large for a document, showing it in a {@link LargeLogViewer}. */
+final class LargeLogFileEditor extends UserDataHolderBase implements FileEditor {
+    private final VirtualFile file;
+    private final @Nullable LargeLogFile log;
+    private final @Nullable LargeLogViewer viewer;
+    private final JComponent component;
+
+    LargeLogFileEditor(@NotNull Project project, @NotNull VirtualFile file) {
+        this.file = file;
+        LargeLogFile opened = null;
+        try {
+            opened = LargeLogFile.open(file.toNioPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            // Unreadable or not on the local file system; the tab says so instead
+        }
+        log = opened;
+        viewer = opened != null ? new LargeLogViewer(opened) : null;
+        component = viewer != null ? viewer : new JBLabel("Cannot read " + file.getPresentableUrl(), SwingConstants.CENTER);
+        if (log == null) return;
+
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Indexing " + file.getName() + "...", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                indicator.setIndeterminate(false);
+                try {
+                    log.buildIndex(indicator);
+                } catch (IOException e) {
+                    // The viewer keeps working by offset, without line numbers
+                }
+            }
+
+            @Override
+            public void onSuccess() {
+                if (log.isIndexed()) viewer.indexFinished();
+            }
+        });
+    }
+
+    @Override
+    public @NotNull JComponent getComponent() {
+        return component;
+    }
+
+    @Override
+    public @Nullable JComponent getPreferredFocusedComponent() {
+        return viewer != null ? viewer.getPreferredFocusedComponent() : null;
+    }
+
+    @Override
+    public @NotNull String getName() {
+        return "Large Log";
+    }
+
+    @Override
+    public void setState(@NotNull FileEditorState state) {
+    }
+
+    @Override
+    public boolean isModified() {
+        return false;
+    }
+
+    @Override
+    public boolean isValid() {
+        return file.isValid();
+    }
+
+    @Override
+    public void addPropertyChangeListener(@NotNull PropertyChangeListener listener) {
+    }
+
+    @Override
+    public void removePropertyChangeListener(@NotNull PropertyChangeListener listener) {
+    }
+
+    @Override
+    public @NotNull VirtualFile getFile() {
+        return file;
+    }
+
+    @Override
+    public void dispose() {
+        if (log == null) return;
+        try {
+            log.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+}
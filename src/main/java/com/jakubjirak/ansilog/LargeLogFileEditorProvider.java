@@ -0,0 +1,39 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.fileEditor.FileEditor;
+import com.intellij.openapi.fileEditor.FileEditorPolicy;
+import com.intellij.openapi.fileEditor.FileEditorProvider;
+import com.intellij.openapi.project.DumbAware;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.SingleRootFileViewProvider;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Opens logs with a configured extension in a {@link LargeLogFileEditor} when they are over the IDE's
+ * limit for loading file content, instead of the platform's plain large-file view.
+ */
+public final class LargeLogFileEditorProvider implements FileEditorProvider, DumbAware {
+    @Override
+    public boolean accept(@NotNull Project project, @NotNull VirtualFile file) {
+        if (file.isDirectory() || !file.isInLocalFileSystem()) return false;
+        String name = file.getName();
+        boolean match = AnsiLogSettingsState.getInstance().getExtensions().stream().anyMatch(ext -> name.endsWith("." + ext));
+        return match && SingleRootFileViewProvider.isTooLargeForContentLoading(file);
+    }
+
+    @Override
+    public @NotNull FileEditor createEditor(@NotNull Project project, @NotNull VirtualFile file) {
+        return new LargeLogFileEditor(project, file);
+    }
+
+    @Override
+    public @NotNull String getEditorTypeId() {
+        return "ansi-large-log-viewer";
+    }
+
+    @Override
+    public @NotNull FileEditorPolicy getPolicy() {
+        return FileEditorPolicy.HIDE_DEFAULT_EDITOR;
+    }
+}
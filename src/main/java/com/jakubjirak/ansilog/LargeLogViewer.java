@@ -0,0 +1,255 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.colors.EditorColorsManager;
+import com.intellij.openapi.editor.colors.EditorColorsScheme;
+import com.intellij.openapi.editor.colors.EditorFontType;
+import com.intellij.openapi.editor.markup.EffectType;
+import com.intellij.openapi.editor.markup.TextAttributes;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.ui.components.JBLabel;
+import com.intellij.ui.components.JBScrollBar;
+import com.intellij.ui.components.JBTextField;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.ui.JBUI;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.io.UncheckedIOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Component showing a {@link LargeLogFile} one screen at a time. The position is a byte offset, so the
+ * scroll bar maps to a percentage of the file and works before the line index is finished. Only the
+ * visible lines are read and decoded, colored from the style recorded for their index block.
+ * The field at the top jumps to a line number or, with a trailing {@code %}, to a percentage.
+ * <p>
+ * Painting and scrolling never read more than the start of a line. The end of an over-long line is
+ * found in the background; until then the view stops below that line. Scrolling up into a long line
+ * the index has not reached yet pages back through it.
+ */
+final class LargeLogViewer extends JPanel {
+    private static final int SCROLL_RANGE = 1_000_000;
+    private static final int WHEEL_LINES = 3;
+
+    private final LargeLogFile log;
+    private final LinesComponent lines = new LinesComponent();
+    private final JBScrollBar scrollBar = new JBScrollBar(Adjustable.VERTICAL, 0, 0, 0, SCROLL_RANGE);
+    private final JBTextField goToField = new JBTextField(12);
+    private final JBLabel status = new JBLabel();
+    private long topOffset;
+    private long topStyle = AnsiStyle.DEFAULT;
+    private boolean updatingScrollBar;
+    /** Starts of over-long lines being resolved in the background. */
+    private final Set<Long> resolving = new HashSet<>();
+
+    LargeLogViewer(@NotNull LargeLogFile log) {
+        super(new BorderLayout());
+        this.log = log;
+
+        JPanel top = new JPanel(new FlowLayout(FlowLayout.LEFT, JBUI.scale(6), JBUI.scale(2)));
+        top.add(new JBLabel("Go to line or %:"));
+        top.add(goToField);
+        top.add(status);
+        goToField.addActionListener(e -> goTo(goToField.getText().trim()));
+
+        scrollBar.addAdjustmentListener(e -> {
+            if (!updatingScrollBar) scrollToOffset((long) ((double) e.getValue() / SCROLL_RANGE * log.getSize()));
+        });
+        lines.addMouseWheelListener(e -> scrollLines(e.getWheelRotation() * WHEEL_LINES));
+        bindKey(KeyEvent.VK_UP, 0, () -> scrollLines(-1));
+        bindKey(KeyEvent.VK_DOWN, 0, () -> scrollLines(1));
+        bindKey(KeyEvent.VK_PAGE_UP, 0, () -> scrollLines(-Math.max(1, lines.visibleLines() - 1)));
+        bindKey(KeyEvent.VK_PAGE_DOWN, 0, () -> scrollLines(Math.max(1, lines.visibleLines() - 1)));
+        bindKey(KeyEvent.VK_HOME, InputEvent.CTRL_DOWN_MASK, () -> scrollToOffset(0));
+        bindKey(KeyEvent.VK_END, InputEvent.CTRL_DOWN_MASK, () -> scrollToOffset(log.getSize()));
+
+        add(top, BorderLayout.NORTH);
+        add(lines, BorderLayout.CENTER);
+        add(scrollBar, BorderLayout.EAST);
+        updateStatus();
+    }
+
+    @NotNull JComponent getPreferredFocusedComponent() {
+        return lines;
+    }
+
+    /** Called on the EDT once the line index is complete. */
+    void indexFinished() {
+        // Styles of lines read before their block was indexed may have been guessed
+        topStyle = log.getStyleAt(topOffset);
+        updateStatus();
+        lines.repaint();
+    }
+
+    private void goTo(String target) {
+        try {
+            if (target.endsWith("%")) {
+                double percent = Double.parseDouble(target.substring(0, target.length() - 1).trim());
+                scrollToOffset((long) (Math.max(0, Math.min(100, percent)) / 100 * log.getSize()));
+            } else if (!log.isIndexed()) {
+                status.setText("Line numbers are available once indexing has finished");
+            } else {
+                long line = Math.max(1, Math.min(log.getLineCount(), Long.parseLong(target)));
+                scrollToOffset(log.getLineStart(line - 1));
+            }
+        } catch (NumberFormatException e) {
+            // Not a number; the field keeps the text so it can be corrected
+        }
+        lines.requestFocusInWindow();
+    }
+
+    private void scrollLines(int delta) {
+        long offset = topOffset;
+        for (int i = 0; i < delta; i++) {
+            long next = log.findNextLineStart(offset);
+            // An over-long line not resolved yet is painted at the top, which resolves it
+            if (next == LargeLogFile.UNKNOWN || next >= log.getSize()) break;
+            offset = next;
+        }
+        for (int i = 0; i > delta && offset > 0; i--) {
+            offset = log.getLineStartContaining(offset - 1);
+        }
+        scrollToOffset(offset);
+    }
+
+    private void scrollToOffset(long offset) {
+        try {
+            long size = log.getSize();
+            // The last line stays at the top rather than scrolling past the end
+            topOffset = log.getLineStartContaining(offset >= size ? Math.max(0, size - 1) : offset);
+            topStyle = log.getStyleAt(topOffset);
+        } catch (UncheckedIOException e) {
+            // The file could not be mapped; the view stays where it was
+        }
+        updatingScrollBar = true;
+        try {
+            scrollBar.setValue(log.getSize() == 0 ? 0 : (int) ((double) topOffset / log.getSize() * SCROLL_RANGE));
+        } finally {
+            updatingScrollBar = false;
+        }
+        updateStatus();
+        lines.repaint();
+    }
+
+    private void updateStatus() {
+        long size = log.getSize();
+        String percent = String.format("%.1f%%", size == 0 ? 100.0 : 100.0 * topOffset / size);
+        if (log.isIndexed()) {
+            status.setText(String.format("Line %,d of %,d (%s)", log.getLineNumber(topOffset) + 1, log.getLineCount(), percent));
+        } else {
+            status.setText(percent + " of " + StringUtil.formatFileSize(size) + ", indexing lines…");
+        }
+    }
+
+    /** Finds the end of an over-long line off the EDT, then paints the lines below it. */
+    private void resolveLater(long lineStart, long style) {
+        if (!resolving.add(lineStart)) return;
+        AppExecutorUtil.getAppExecutorService().execute(() -> {
+            try {
+                log.resolveLine(lineStart, style);
+            } catch (UncheckedIOException e) {
+                // The file could not be mapped; the line stays unresolved and is not tried again
+                return;
+            }
+            ApplicationManager.getApplication().invokeLater(() -> {
+                resolving.remove(lineStart);
+                lines.repaint();
+            });
+        });
+    }
+
+    private void bindKey(int keyCode, int modifiers, Runnable action) {
+        String name = "largeLog." + keyCode + "." + modifiers;
+        lines.getInputMap(JComponent.WHEN_FOCUSED).put(KeyStroke.getKeyStroke(keyCode, modifiers), name);
+        lines.getActionMap().put(name, new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                action.run();
+            }
+        });
+    }
+
+    /** Paints the lines from the top offset down to the bottom of the component. */
+    private final class LinesComponent extends JComponent {
+        LinesComponent() {
+            setFocusable(true);
+            addMouseListener(new MouseAdapter() {
+                @Override
+                public void mousePressed(MouseEvent e) {
+                    requestFocusInWindow();
+                }
+            });
+        }
+
+        int visibleLines() {
+            return getHeight() / getFontMetrics(font()).getHeight();
+        }
+
+        private Font font() {
+            return EditorColorsManager.getInstance().getGlobalScheme().getFont(EditorFontType.PLAIN);
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            EditorColorsScheme scheme = EditorColorsManager.getInstance().getGlobalScheme();
+            Font font = font();
+            FontMetrics metrics = g.getFontMetrics(font);
+            g.setColor(scheme.getDefaultBackground());
+            g.fillRect(0, 0, getWidth(), getHeight());
+
+            long offset = topOffset;
+            long style = topStyle;
+            int lineHeight = metrics.getHeight();
+            try {
+                for (int y = 0; y < getHeight() && offset < log.getSize(); y += lineHeight) {
+                    LargeLogFile.Line line = log.readLine(offset, style);
+                    paintLine(g, scheme, font, metrics, line, y);
+                    if (line.end == LargeLogFile.UNKNOWN) {
+                        resolveLater(offset, style);
+                        break;
+                    }
+                    offset = line.end;
+                    style = line.endStyle;
+                }
+            } catch (UncheckedIOException e) {
+                // The file could not be mapped; whatever was painted stays
+            }
+        }
+
+        private void paintLine(Graphics g, EditorColorsScheme scheme, Font font, FontMetrics metrics, LargeLogFile.Line line, int y) {
+            int x = JBUI.scale(4);
+            int baseline = y + metrics.getAscent();
+            String text = line.truncated ? line.text + " …" : line.text;
+            for (int run = 0; run < line.runStarts.length && x < getWidth(); run++) {
+                int start = Math.min(line.runStarts[run], text.length());
+                int end = run + 1 < line.runStarts.length ? Math.min(line.runStarts[run + 1], text.length()) : text.length();
+                if (start >= end) continue;
+                String segment = text.substring(start, end);
+                TextAttributes attrs = AnsiTextAttributesCache.getInstance().get(line.runStyles[run]);
+                Font runFont = attrs != null && attrs.getFontType() != Font.PLAIN ? font.deriveFont(attrs.getFontType()) : font;
+                FontMetrics runMetrics = g.getFontMetrics(runFont);
+                int width = runMetrics.stringWidth(segment);
+                if (attrs != null && attrs.getBackgroundColor() != null) {
+                    g.setColor(attrs.getBackgroundColor());
+                    g.fillRect(x, y, width, metrics.getHeight());
+                }
+                Color foreground = attrs != null && attrs.getForegroundColor() != null ? attrs.getForegroundColor() : scheme.getDefaultForeground();
+                g.setColor(foreground);
+                g.setFont(runFont);
+                g.drawString(segment, x, baseline);
+                if (attrs != null && attrs.getEffectType() == EffectType.LINE_UNDERSCORE) {
+                    g.drawLine(x, baseline + 1, x + width, baseline + 1);
+                }
+                x += width;
+            }
+        }
+    }
+}
@@ -32,11 +32,14 @@ public class LogClusteringEngine {
     }
     
     public static ClusteringResult clusterLogs(@NotNull String logContent, int k) {
+        return clusterLogs(LogSnapshot.of(logContent), k);
+    }
+
+    public static ClusteringResult clusterLogs(@NotNull LogSnapshot log, int k) {
         ClusteringResult result = new ClusteringResult();
-        String[] lines = logContent.split("\n");
         
         // K-means clustering
-        List<LogCluster> clusters = kMeansClustering(lines, k);
+        List<LogCluster> clusters = kMeansClustering(log, k);
         result.clusters = clusters;
         
         // Calculate cluster sizes
@@ -48,24 +51,27 @@ public class LogClusteringEngine {
         identifyThemes(clusters, result);
         
         // Calculate silhouette score
-        result.silhouetteScore = calculateSilhouetteScore(clusters, lines);
+        result.silhouetteScore = calculateSilhouetteScore(clusters);
         
         return result;
     }
     
-    private static List<LogCluster> kMeansClustering(@NotNull String[] lines, int k) {
+    private static List<LogCluster> kMeansClustering(@NotNull LogSnapshot log, int k) {
         List<LogCluster> clusters = new ArrayList<>();
+        int lineCount = log.getLineCount();
+        if (lineCount == 0) return clusters;
         Random random = new Random(42);
         
         // Initialize clusters
         for (int i = 0; i < k; i++) {
             LogCluster cluster = new LogCluster(i);
-            cluster.representative = lines[random.nextInt(lines.length)];
+            cluster.representative = log.getLine(random.nextInt(lineCount));
             clusters.add(cluster);
         }
         
-        // Assignment phase
-        for (String line : lines) {
+        // Assignment phase; members keep the line, so it is copied once here
+        for (int i = 0; i < lineCount; i++) {
+            String line = log.getLine(i);
             LogCluster nearest = clusters.get(0);
             double minDistance = Double.MAX_VALUE;
             
@@ -149,7 +155,7 @@ public class LogClusteringEngine {
         }
     }
     
-    private static double calculateSilhouetteScore(@NotNull List<LogCluster> clusters, @NotNull String[] lines) {
+    private static double calculateSilhouetteScore(@NotNull List<LogCluster> clusters) {
         double totalScore = 0.0;
         int count = 0;
         
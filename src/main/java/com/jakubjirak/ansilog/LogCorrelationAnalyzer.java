@@ -2,6 +2,7 @@ package com.jakubjirak.ansilog;
 
 import org.jetbrains.annotations.NotNull;
 import java.util.*;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class LogCorrelationAnalyzer {
@@ -51,10 +52,13 @@ public class LogCorrelationAnalyzer {
     }
     
     public static CorrelationResult analyzeCorrelations(@NotNull String logContent) {
+        return analyzeCorrelations(LogSnapshot.of(logContent));
+    }
+
+    public static CorrelationResult analyzeCorrelations(@NotNull LogSnapshot lines) {
         CorrelationResult result = new CorrelationResult();
-        String[] lines = logContent.split("\n");
         
-        List<String> commonPatterns = extractCommonPatterns(logContent);
+        List<String> commonPatterns = extractCommonPatterns();
         
         // Find correlations between patterns
         for (int i = 0; i < commonPatterns.size(); i++) {
@@ -93,7 +97,7 @@ public class LogCorrelationAnalyzer {
         return result;
     }
     
-    private static List<String> extractCommonPatterns(@NotNull String content) {
+    private static List<String> extractCommonPatterns() {
         List<String> patterns = new ArrayList<>();
         patterns.add("ERROR");
         patterns.add("WARN");
@@ -108,18 +112,19 @@ public class LogCorrelationAnalyzer {
         return patterns;
     }
     
-    private static CorrelationPair correlatePatterns(@NotNull String p1, @NotNull String p2, @NotNull String[] lines) {
+    private static CorrelationPair correlatePatterns(@NotNull String p1, @NotNull String p2, @NotNull LogSnapshot lines) {
         CorrelationPair pair = new CorrelationPair(p1, p2);
         
         List<Integer> lines1 = new ArrayList<>();
         List<Integer> lines2 = new ArrayList<>();
         
-        Pattern pattern1 = Pattern.compile(p1, Pattern.CASE_INSENSITIVE);
-        Pattern pattern2 = Pattern.compile(p2, Pattern.CASE_INSENSITIVE);
+        Matcher matcher1 = Pattern.compile(p1, Pattern.CASE_INSENSITIVE).matcher("");
+        Matcher matcher2 = Pattern.compile(p2, Pattern.CASE_INSENSITIVE).matcher("");
         
-        for (int i = 0; i < lines.length; i++) {
-            if (pattern1.matcher(lines[i]).find()) lines1.add(i);
-            if (pattern2.matcher(lines[i]).find()) lines2.add(i);
+        for (int i = 0; i < lines.getLineCount(); i++) {
+            CharSequence line = lines.getLineView(i);
+            if (matcher1.reset(line).find()) lines1.add(i);
+            if (matcher2.reset(line).find()) lines2.add(i);
         }
         
         pair.lineNumbers1 = lines1;
@@ -144,18 +149,19 @@ public class LogCorrelationAnalyzer {
         return pair;
     }
     
-    private static CausalSequence findCausalSequence(@NotNull String antecedent, @NotNull String consequence, @NotNull String[] lines) {
+    private static CausalSequence findCausalSequence(@NotNull String antecedent, @NotNull String consequence, @NotNull LogSnapshot lines) {
         CausalSequence seq = new CausalSequence(antecedent, consequence);
         
-        Pattern antPattern = Pattern.compile(antecedent, Pattern.CASE_INSENSITIVE);
-        Pattern conseqPattern = Pattern.compile(consequence, Pattern.CASE_INSENSITIVE);
+        Matcher antMatcher = Pattern.compile(antecedent, Pattern.CASE_INSENSITIVE).matcher("");
+        Matcher conseqMatcher = Pattern.compile(consequence, Pattern.CASE_INSENSITIVE).matcher("");
+        int lineCount = lines.getLineCount();
         
-        for (int i = 0; i < lines.length - 1; i++) {
-            if (antPattern.matcher(lines[i]).find()) {
-                for (int j = i + 1; j < Math.min(i + 10, lines.length); j++) {
-                    if (conseqPattern.matcher(lines[j]).find()) {
+        for (int i = 0; i < lineCount - 1; i++) {
+            if (antMatcher.reset(lines.getLineView(i)).find()) {
+                for (int j = i + 1; j < Math.min(i + 10, lineCount); j++) {
+                    if (conseqMatcher.reset(lines.getLineView(j)).find()) {
                         seq.occurrences++;
-                        seq.examples.add(lines[i] + " -> " + lines[j]);
+                        seq.examples.add(lines.getLine(i) + " -> " + lines.getLine(j));
                         break;
                     }
                 }
@@ -165,11 +171,12 @@ public class LogCorrelationAnalyzer {
         return seq;
     }
     
-    private static void extractRelatedErrors(@NotNull String[] lines, @NotNull CorrelationResult result) {
+    private static void extractRelatedErrors(@NotNull LogSnapshot lines, @NotNull CorrelationResult result) {
         Map<String, Set<String>> errorMap = new LinkedHashMap<>();
         
-        for (String line : lines) {
-            if (line.contains("ERROR") || line.contains("Exception")) {
+        for (int i = 0; i < lines.getLineCount(); i++) {
+            if (lines.contains(i, "ERROR") || lines.contains(i, "Exception")) {
+                String line = lines.getLine(i);
                 String errorType = extractErrorType(line);
                 String errorContext = extractContext(line);
                 
@@ -183,15 +190,15 @@ public class LogCorrelationAnalyzer {
         );
     }
     
-    private static void analyzeErrorChains(@NotNull String[] lines, @NotNull CorrelationResult result) {
+    private static void analyzeErrorChains(@NotNull LogSnapshot lines, @NotNull CorrelationResult result) {
         StringBuilder chain = new StringBuilder();
         
-        for (String line : lines) {
-            if (line.contains("ERROR") || line.contains("WARN")) {
+        for (int i = 0; i < lines.getLineCount(); i++) {
+            if (lines.contains(i, "ERROR") || lines.contains(i, "WARN")) {
                 if (!chain.isEmpty()) {
                     chain.append(" -> ");
                 }
-                chain.append(extractErrorType(line));
+                chain.append(extractErrorType(lines.getLine(i)));
             }
         }
         
@@ -105,7 +105,7 @@ public class LogDiffAnalysisAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        e.getPresentation().setEnabled(editor != null && !editor.getDocument().getText().isEmpty());
+        e.getPresentation().setEnabled(editor != null && editor.getDocument().getTextLength() > 0);
     }
 
     private int showChoiceDialog(AnActionEvent e, String message, String title, String[] options, int defaultIndex) {
@@ -2,6 +2,7 @@ package com.jakubjirak.ansilog;
 
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.actionSystem.PlatformDataKeys;
 import com.intellij.openapi.ui.Messages;
@@ -13,23 +14,15 @@ public class LogLevelStatisticsAction extends AnAction {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
         if (editor == null) return;
         
-        String text = editor.getDocument().getText();
-        String[] lines = text.split("\n");
+        Document doc = editor.getDocument();
+        LogLineIndex index = LogLineIndex.getInstance();
+        int lineCount = index.getLineCount(doc);
         
-        int errorCount = 0;
-        int warnCount = 0;
-        int infoCount = 0;
-        int debugCount = 0;
-        int traceCount = 0;
-        
-        for (String line : lines) {
-            String upperLine = line.toUpperCase();
-            if (upperLine.contains("ERROR")) errorCount++;
-            else if (upperLine.contains("WARN")) warnCount++;
-            else if (upperLine.contains("INFO")) infoCount++;
-            else if (upperLine.contains("DEBUG")) debugCount++;
-            else if (upperLine.contains("TRACE")) traceCount++;
-        }
+        int errorCount = index.count(doc, LogLineIndex.Severity.ERROR);
+        int warnCount = index.count(doc, LogLineIndex.Severity.WARN);
+        int infoCount = index.count(doc, LogLineIndex.Severity.INFO);
+        int debugCount = index.count(doc, LogLineIndex.Severity.DEBUG);
+        int traceCount = index.count(doc, LogLineIndex.Severity.TRACE);
         
         String stats = String.format(
                 "Log Level Statistics:\n\n" +
@@ -39,12 +32,12 @@ public class LogLevelStatisticsAction extends AnAction {
                 "DEBUG: %d (%.1f%%)\n" +
                 "TRACE: %d (%.1f%%)\n" +
                 "\nTotal lines: %d",
-                errorCount, (errorCount * 100.0) / lines.length,
-                warnCount, (warnCount * 100.0) / lines.length,
-                infoCount, (infoCount * 100.0) / lines.length,
-                debugCount, (debugCount * 100.0) / lines.length,
-                traceCount, (traceCount * 100.0) / lines.length,
-                lines.length
+                errorCount, (errorCount * 100.0) / Math.max(1, lineCount),
+                warnCount, (warnCount * 100.0) / Math.max(1, lineCount),
+                infoCount, (infoCount * 100.0) / Math.max(1, lineCount),
+                debugCount, (debugCount * 100.0) / Math.max(1, lineCount),
+                traceCount, (traceCount * 100.0) / Math.max(1, lineCount),
+                lineCount
         );
         
         Messages.showInfoMessage(e.getProject(), stats, "Log Level Statistics");
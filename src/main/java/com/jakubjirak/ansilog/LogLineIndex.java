@@ -0,0 +1,394 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.util.Key;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Per-line classification of a document in columns: severity, SGR code count, timestamp and flags
+ * for exception, stack frame and JSON lines. Lines are numbered as in {@link LogSnapshot}. The columns
+ * are filled in one pass on first use; edits reported by the editor event multicaster re-classify only
+ * the changed lines and shift the rows after them. Per-severity totals are kept up to date, so level
+ * statistics need no scan at all. A document edited without an editor is indexed again on the next query.
+ */
+@Service(Service.Level.APP)
+public final class LogLineIndex implements DocumentListener, Disposable {
+    private static final Key<Columns> KEY = Key.create("LogLineIndex");
+
+    /** Line severities in ascending order; a line takes the highest level named in it, in any case. FATAL counts as ERROR. */
+    public enum Severity { NONE, TRACE, DEBUG, INFO, WARN, ERROR }
+
+    /** Timestamp column value of a line without a time. */
+    public static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private static final Severity[] SEVERITIES = Severity.values();
+
+    public LogLineIndex() {
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(this, this);
+    }
+
+    public static @NotNull LogLineIndex getInstance() {
+        return ApplicationManager.getApplication().getService(LogLineIndex.class);
+    }
+
+    /** Number of lines; a trailing line separator does not start another line. */
+    public int getLineCount(@NotNull Document doc) {
+        Columns columns = columns(doc);
+        synchronized (columns) {
+            return columns.visibleRows(doc);
+        }
+    }
+
+    /** Number of lines of the given severity. */
+    public int count(@NotNull Document doc, @NotNull Severity severity) {
+        Columns columns = columns(doc);
+        synchronized (columns) {
+            return columns.counts[severity.ordinal()];
+        }
+    }
+
+    /** Numbers of the lines of the given severity, in order. */
+    public @NotNull IntArrayList linesWith(@NotNull Document doc, @NotNull Severity severity) {
+        Columns columns = columns(doc);
+        synchronized (columns) {
+            IntArrayList lines = new IntArrayList(columns.counts[severity.ordinal()]);
+            byte value = (byte) severity.ordinal();
+            for (int line = 0, rows = columns.visibleRows(doc); line < rows; line++) {
+                if (columns.severity[line] == value) lines.add(line);
+            }
+            return lines;
+        }
+    }
+
+    /** First line after {@code line} of the given severity, or -1. */
+    public int nextLineWith(@NotNull Document doc, @NotNull Severity severity, int line) {
+        Columns columns = columns(doc);
+        synchronized (columns) {
+            byte value = (byte) severity.ordinal();
+            for (int l = line + 1, rows = columns.visibleRows(doc); l < rows; l++) {
+                if (columns.severity[l] == value) return l;
+            }
+            return -1;
+        }
+    }
+
+    /** Last line before {@code line} of the given severity, or -1. */
+    public int previousLineWith(@NotNull Document doc, @NotNull Severity severity, int line) {
+        Columns columns = columns(doc);
+        synchronized (columns) {
+            byte value = (byte) severity.ordinal();
+            for (int l = Math.min(line, columns.visibleRows(doc)) - 1; l >= 0; l--) {
+                if (columns.severity[l] == value) return l;
+            }
+            return -1;
+        }
+    }
+
+    public @NotNull Severity getSeverity(@NotNull Document doc, int line) {
+        Columns columns = columns(doc);
+        synchronized (columns) {
+            return SEVERITIES[columns.severity[line]];
+        }
+    }
+
+    /** SGR codes on the line, saturated at {@link Short#MAX_VALUE}. */
+    public int getAnsiCount(@NotNull Document doc, int line) {
+        Columns columns = columns(doc);
+        synchronized (columns) {
+            return columns.ansiCount[line];
+        }
+    }
+
+    /**
+     * Epoch milliseconds (UTC) of the first {@code yyyy-MM-dd HH:mm:ss[.SSS]} on the line, milliseconds
+     * since midnight if the line only has a time of day, or {@link #NO_TIMESTAMP}.
+     */
+    public long getTimestamp(@NotNull Document doc, int line) {
+        Columns columns = columns(doc);
+        synchronized (columns) {
+            return columns.timestamp[line];
+        }
+    }
+
+    public boolean hasException(@NotNull Document doc, int line) {
+        Columns columns = columns(doc);
+        synchronized (columns) {
+            return columns.exception.get(line);
+        }
+    }
+
+    public boolean isStackFrame(@NotNull Document doc, int line) {
+        Columns columns = columns(doc);
+        synchronized (columns) {
+            return columns.stackFrame.get(line);
+        }
+    }
+
+    public boolean isJson(@NotNull Document doc, int line) {
+        Columns columns = columns(doc);
+        synchronized (columns) {
+            return columns.json.get(line);
+        }
+    }
+
+    private static Columns columns(Document doc) {
+        Columns columns = doc.getUserData(KEY);
+        if (columns == null) {
+            columns = new Columns();
+            doc.putUserData(KEY, columns);
+        }
+        synchronized (columns) {
+            long stamp = doc.getModificationStamp();
+            if (columns.stamp != stamp) {
+                int rows = doc.getLineCount();
+                columns.clear(rows);
+                columns.classify(doc, 0, rows);
+                columns.stamp = stamp;
+            }
+            return columns;
+        }
+    }
+
+    @Override
+    public void beforeDocumentChange(@NotNull DocumentEvent event) {
+        Document doc = event.getDocument();
+        Columns columns = doc.getUserData(KEY);
+        if (columns == null) return;
+        synchronized (columns) {
+            if (columns.stamp != doc.getModificationStamp() || doc.getLineCount() == 0) return;
+            columns.firstLine = doc.getLineNumber(event.getOffset());
+            columns.lastLine = doc.getLineNumber(event.getOffset() + event.getOldLength());
+            columns.tracking = true;
+        }
+    }
+
+    @Override
+    public void documentChanged(@NotNull DocumentEvent event) {
+        Document doc = event.getDocument();
+        Columns columns = doc.getUserData(KEY);
+        if (columns == null) return;
+        synchronized (columns) {
+            if (!columns.tracking) return;
+            columns.tracking = false;
+            if (doc.getLineCount() == 0) return;
+            int first = columns.firstLine;
+            int newLast = doc.getLineNumber(event.getOffset() + event.getNewLength());
+            columns.replace(first, columns.lastLine + 1, newLast + 1);
+            columns.classify(doc, first, newLast + 1);
+            columns.stamp = doc.getModificationStamp();
+        }
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    /** A stack frame line: {@code at } after leading whitespace. */
+    static boolean isStackFrame(@NotNull CharSequence text, int start, int end) {
+        int i = start;
+        while (i < end && Character.isWhitespace(text.charAt(i))) i++;
+        return i > start && i + 3 <= end && text.charAt(i) == 'a' && text.charAt(i + 1) == 't' && text.charAt(i + 2) == ' ';
+    }
+
+    /** One row per document line, including an empty last line after a trailing separator. */
+    private static final class Columns {
+        long stamp = -1;
+        boolean tracking;
+        int firstLine;
+        int lastLine;
+        int rows;
+        byte[] severity = new byte[0];
+        short[] ansiCount = new short[0];
+        long[] timestamp = new long[0];
+        BitSet exception = new BitSet();
+        BitSet stackFrame = new BitSet();
+        BitSet json = new BitSet();
+        final int[] counts = new int[SEVERITIES.length];
+
+        void clear(int rowCount) {
+            rows = rowCount;
+            severity = new byte[rowCount];
+            ansiCount = new short[rowCount];
+            timestamp = new long[rowCount];
+            exception = new BitSet();
+            stackFrame = new BitSet();
+            json = new BitSet();
+            Arrays.fill(counts, 0);
+        }
+
+        /** Rows that count as lines: all but an empty last row after a trailing separator. */
+        int visibleRows(Document doc) {
+            int length = doc.getTextLength();
+            if (length == 0) return 0;
+            return doc.getImmutableCharSequence().charAt(length - 1) == '\n' ? rows - 1 : rows;
+        }
+
+        /** Replaces rows {@code [from, oldEnd)} with rows {@code [from, newEnd)}, which are left unclassified. */
+        void replace(int from, int oldEnd, int newEnd) {
+            for (int row = from; row < oldEnd; row++) counts[severity[row]]--;
+            int delta = newEnd - oldEnd;
+            int newRows = rows + delta;
+            if (delta != 0) {
+                severity = shift(severity, oldEnd, delta, rows);
+                ansiCount = shift(ansiCount, oldEnd, delta, rows);
+                timestamp = shift(timestamp, oldEnd, delta, rows);
+                exception = shift(exception, oldEnd, delta, rows);
+                stackFrame = shift(stackFrame, oldEnd, delta, rows);
+                json = shift(json, oldEnd, delta, rows);
+            }
+            exception.clear(from, newEnd);
+            stackFrame.clear(from, newEnd);
+            json.clear(from, newEnd);
+            rows = newRows;
+        }
+
+        private static byte[] shift(byte[] column, int tail, int delta, int rows) {
+            byte[] result = delta > 0 && rows + delta > column.length ? Arrays.copyOf(column, grow(rows + delta)) : column;
+            System.arraycopy(column, tail, result, tail + delta, rows - tail);
+            return result;
+        }
+
+        private static short[] shift(short[] column, int tail, int delta, int rows) {
+            short[] result = delta > 0 && rows + delta > column.length ? Arrays.copyOf(column, grow(rows + delta)) : column;
+            System.arraycopy(column, tail, result, tail + delta, rows - tail);
+            return result;
+        }
+
+        private static long[] shift(long[] column, int tail, int delta, int rows) {
+            long[] result = delta > 0 && rows + delta > column.length ? Arrays.copyOf(column, grow(rows + delta)) : column;
+            System.arraycopy(column, tail, result, tail + delta, rows - tail);
+            return result;
+        }
+
+        private static BitSet shift(BitSet column, int tail, int delta, int rows) {
+            BitSet moved = column.get(tail, rows);
+            column.clear(Math.min(tail, tail + delta), rows + Math.max(0, delta));
+            for (int bit = moved.nextSetBit(0); bit >= 0; bit = moved.nextSetBit(bit + 1)) {
+                column.set(tail + delta + bit);
+            }
+            return column;
+        }
+
+        private static int grow(int needed) {
+            return needed + (needed >> 1) + 16;
+        }
+
+        /** Classifies rows {@code [from, to)}, which must not be counted yet. */
+        void classify(Document doc, int from, int to) {
+            CharSequence text = doc.getImmutableCharSequence();
+            for (int row = from; row < to; row++) {
+                int start = doc.getLineStartOffset(row);
+                int end = doc.getLineEndOffset(row);
+                Severity level = severityOf(text, start, end);
+                severity[row] = (byte) level.ordinal();
+                counts[level.ordinal()]++;
+                ansiCount[row] = (short) Math.min(Short.MAX_VALUE, AnsiSgrLexer.count(text, start, end));
+                timestamp[row] = timestampOf(text, start, end);
+                if (indexOf(text, start, end, "Exception") >= 0) exception.set(row);
+                if (isStackFrame(text, start, end)) stackFrame.set(row);
+                if (isJson(text, start, end)) json.set(row);
+            }
+        }
+
+        private static Severity severityOf(CharSequence text, int start, int end) {
+            if (containsIgnoreCase(text, start, end, "ERROR") || containsIgnoreCase(text, start, end, "FATAL")) return Severity.ERROR;
+            if (containsIgnoreCase(text, start, end, "WARN")) return Severity.WARN;
+            if (containsIgnoreCase(text, start, end, "INFO")) return Severity.INFO;
+            if (containsIgnoreCase(text, start, end, "DEBUG")) return Severity.DEBUG;
+            if (containsIgnoreCase(text, start, end, "TRACE")) return Severity.TRACE;
+            return Severity.NONE;
+        }
+
+        /** {@code word} must be upper case. */
+        private static boolean containsIgnoreCase(CharSequence text, int start, int end, String word) {
+            int last = end - word.length();
+            outer:
+            for (int i = start; i <= last; i++) {
+                for (int k = 0; k < word.length(); k++) {
+                    if (Character.toUpperCase(text.charAt(i + k)) != word.charAt(k)) continue outer;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        private static int indexOf(CharSequence text, int start, int end, String word) {
+            int last = end - word.length();
+            outer:
+            for (int i = start; i <= last; i++) {
+                for (int k = 0; k < word.length(); k++) {
+                    if (text.charAt(i + k) != word.charAt(k)) continue outer;
+                }
+                return i;
+            }
+            return -1;
+        }
+
+        private static boolean isJson(CharSequence text, int start, int end) {
+            while (start < end && Character.isWhitespace(text.charAt(start))) start++;
+            while (end > start && Character.isWhitespace(text.charAt(end - 1))) end--;
+            return end - start >= 2 && text.charAt(start) == '{' && text.charAt(end - 1) == '}';
+        }
+
+        private static long timestampOf(CharSequence text, int start, int end) {
+            long timeOfDay = NO_TIMESTAMP;
+            for (int i = start; i + 8 <= end; i++) {
+                if (text.charAt(i + 2) != ':' || !isTime(text, i, end)) continue;
+                long millis = timeMillis(text, i, end);
+                // A date directly before the time makes it absolute
+                if (i - start >= 11 && isDate(text, i - 11) && (text.charAt(i - 1) == ' ' || text.charAt(i - 1) == 'T')) {
+                    return epochDay(text, i - 11) * 86_400_000L + millis;
+                }
+                if (timeOfDay == NO_TIMESTAMP) timeOfDay = millis;
+            }
+            return timeOfDay;
+        }
+
+        /** {@code HH:mm:ss} at {@code i}. */
+        private static boolean isTime(CharSequence text, int i, int end) {
+            return i + 8 <= end && digits(text, i, 2) >= 0 && text.charAt(i + 2) == ':'
+                    && digits(text, i + 3, 2) >= 0 && text.charAt(i + 5) == ':' && digits(text, i + 6, 2) >= 0;
+        }
+
+        private static long timeMillis(CharSequence text, int i, int end) {
+            long millis = (digits(text, i, 2) * 3600L + digits(text, i + 3, 2) * 60L + digits(text, i + 6, 2)) * 1000L;
+            if (i + 12 <= end && text.charAt(i + 8) == '.' && digits(text, i + 9, 3) >= 0) millis += digits(text, i + 9, 3);
+            return millis;
+        }
+
+        /** {@code yyyy-MM-dd} at {@code i}. */
+        private static boolean isDate(CharSequence text, int i) {
+            return digits(text, i, 4) >= 0 && text.charAt(i + 4) == '-' && digits(text, i + 5, 2) >= 0
+                    && text.charAt(i + 7) == '-' && digits(text, i + 8, 2) >= 0;
+        }
+
+        private static long epochDay(CharSequence text, int i) {
+            int year = digits(text, i, 4);
+            int month = Math.max(1, Math.min(12, digits(text, i + 5, 2)));
+            int day = Math.max(1, Math.min(31, digits(text, i + 8, 2)));
+            return LocalDate.of(year, month, 1).toEpochDay() + day - 1;
+        }
+
+        /** Value of {@code count} decimal digits at {@code i}, or -1. */
+        private static int digits(CharSequence text, int i, int count) {
+            int value = 0;
+            for (int k = 0; k < count; k++) {
+                char c = text.charAt(i + k);
+                if (c < '0' || c > '9') return -1;
+                value = value * 10 + (c - '0');
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.PlatformDataKeys;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.ScrollType;
+import com.intellij.openapi.ui.Messages;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Moves the caret to the next or previous target of one {@link LogNavigationIndex.Kind}. Repeated
+ * invocations step through the log without scanning it again. An ANSI code target is selected.
+ */
+public abstract class LogNavigationAction extends AnAction {
+    private final LogNavigationIndex.Kind kind;
+    private final boolean forward;
+    private final String noneMessage;
+
+    protected LogNavigationAction(@NotNull LogNavigationIndex.Kind kind, boolean forward, @NotNull String noneMessage) {
+        this.kind = kind;
+        this.forward = forward;
+        this.noneMessage = noneMessage;
+    }
+
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Editor editor = e.getData(PlatformDataKeys.EDITOR);
+        if (editor == null) return;
+
+        Document doc = editor.getDocument();
+        int caret = editor.getCaretModel().getOffset();
+        LogNavigationIndex index = LogNavigationIndex.getInstance();
+        int target = forward ? index.next(doc, kind, caret) : index.previous(doc, kind, caret);
+        if (target < 0) {
+            Messages.showInfoMessage(e.getProject(), noneMessage, "ANSI Log Viewer");
+            return;
+        }
+
+        editor.getCaretModel().moveToOffset(target);
+        editor.getScrollingModel().scrollToCaret(ScrollType.CENTER);
+        if (kind == LogNavigationIndex.Kind.ANSI) {
+            CharSequence text = doc.getImmutableCharSequence();
+            AnsiSgrLexer lexer = new AnsiSgrLexer();
+            lexer.reset(text, target, doc.getLineEndOffset(doc.getLineNumber(target)));
+            if (lexer.next()) editor.getSelectionModel().setSelection(lexer.getStart(), lexer.getEnd());
+        } else {
+            editor.getSelectionModel().removeSelection();
+        }
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        Editor editor = e.getData(PlatformDataKeys.EDITOR);
+        if (editor == null) {
+            e.getPresentation().setEnabled(false);
+            return;
+        }
+        Document doc = editor.getDocument();
+        AnsiDocumentFacts facts = AnsiDocumentFacts.getInstance();
+        e.getPresentation().setEnabled(switch (kind) {
+            case ANSI -> facts.hasAnsi(doc);
+            case ERROR, WARNING -> doc.getTextLength() > 0;
+            case EXCEPTION -> facts.hasStackTrace(doc);
+        });
+    }
+
+    public static final class PreviousAnsiCode extends LogNavigationAction {
+        public PreviousAnsiCode() {
+            super(LogNavigationIndex.Kind.ANSI, false, "No previous ANSI codes found.");
+        }
+    }
+
+    public static final class NextError extends LogNavigationAction {
+        public NextError() {
+            super(LogNavigationIndex.Kind.ERROR, true, "No more errors found.");
+        }
+    }
+
+    public static final class PreviousError extends LogNavigationAction {
+        public PreviousError() {
+            super(LogNavigationIndex.Kind.ERROR, false, "No previous errors found.");
+        }
+    }
+
+    public static final class NextWarning extends LogNavigationAction {
+        public NextWarning() {
+            super(LogNavigationIndex.Kind.WARNING, true, "No more warnings found.");
+        }
+    }
+
+    public static final class PreviousWarning extends LogNavigationAction {
+        public PreviousWarning() {
+            super(LogNavigationIndex.Kind.WARNING, false, "No previous warnings found.");
+        }
+    }
+
+    public static final class NextException extends LogNavigationAction {
+        public NextException() {
+            super(LogNavigationIndex.Kind.EXCEPTION, true, "No more stack traces found.");
+        }
+    }
+
+    public static final class PreviousException extends LogNavigationAction {
+        public PreviousException() {
+            super(LogNavigationIndex.Kind.EXCEPTION, false, "No previous stack traces found.");
+        }
+    }
+}
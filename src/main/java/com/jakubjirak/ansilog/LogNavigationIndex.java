@@ -0,0 +1,212 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.util.Key;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Sorted offsets of navigation targets per document: escape sequences and the first line of each
+ * stack trace. Next and previous are binary searches. Error and warning lines are found in the
+ * severity column of {@link LogLineIndex}, so navigation and level statistics agree on what an error
+ * is. The index is built on
+ * first use; edits reported by the editor event multicaster replace only the entries of the changed
+ * lines and one line around them, and shift the entries after them. A document edited without an
+ * editor is indexed again on the next lookup.
+ */
+@Service(Service.Level.APP)
+public final class LogNavigationIndex implements DocumentListener, Disposable {
+    private static final Key<Entries> KEY = Key.create("LogNavigationIndex");
+
+    public enum Kind { ANSI, ERROR, WARNING, EXCEPTION }
+
+    /** Kinds whose offsets are kept here rather than taken from {@link LogLineIndex}. */
+    private static final Kind[] INDEXED = { Kind.ANSI, Kind.EXCEPTION };
+
+    public LogNavigationIndex() {
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(this, this);
+    }
+
+    public static @NotNull LogNavigationIndex getInstance() {
+        return ApplicationManager.getApplication().getService(LogNavigationIndex.class);
+    }
+
+    /** First target of the kind after {@code offset}, or -1. */
+    public int next(@NotNull Document doc, @NotNull Kind kind, int offset) {
+        LogLineIndex.Severity severity = severityOf(kind);
+        if (severity != null) {
+            int line = LogLineIndex.getInstance().nextLineWith(doc, severity, doc.getLineNumber(offset));
+            return line >= 0 ? doc.getLineStartOffset(line) : -1;
+        }
+        Entries entries = entries(doc);
+        synchronized (entries) {
+            IntArrayList list = entries.of(kind);
+            int i = upperBound(list, offset);
+            return i < list.size() ? list.getInt(i) : -1;
+        }
+    }
+
+    /** Last target of the kind before {@code offset}, or -1. */
+    public int previous(@NotNull Document doc, @NotNull Kind kind, int offset) {
+        LogLineIndex.Severity severity = severityOf(kind);
+        if (severity != null) {
+            int line = doc.getLineNumber(offset);
+            // The line containing the offset is before it unless the offset is its start
+            int before = doc.getLineStartOffset(line) < offset ? line + 1 : line;
+            int found = LogLineIndex.getInstance().previousLineWith(doc, severity, before);
+            return found >= 0 ? doc.getLineStartOffset(found) : -1;
+        }
+        Entries entries = entries(doc);
+        synchronized (entries) {
+            IntArrayList list = entries.of(kind);
+            int i = lowerBound(list, offset) - 1;
+            return i >= 0 ? list.getInt(i) : -1;
+        }
+    }
+
+    public int count(@NotNull Document doc, @NotNull Kind kind) {
+        LogLineIndex.Severity severity = severityOf(kind);
+        if (severity != null) return LogLineIndex.getInstance().count(doc, severity);
+        Entries entries = entries(doc);
+        synchronized (entries) {
+            return entries.of(kind).size();
+        }
+    }
+
+    private static @Nullable LogLineIndex.Severity severityOf(Kind kind) {
+        return switch (kind) {
+            case ERROR -> LogLineIndex.Severity.ERROR;
+            case WARNING -> LogLineIndex.Severity.WARN;
+            default -> null;
+        };
+    }
+
+    private static Entries entries(Document doc) {
+        Entries entries = doc.getUserData(KEY);
+        if (entries == null) {
+            entries = new Entries();
+            doc.putUserData(KEY, entries);
+        }
+        synchronized (entries) {
+            long stamp = doc.getModificationStamp();
+            if (entries.stamp != stamp) {
+                entries.escapes.clear();
+                entries.exceptions.clear();
+                entries.scan(doc, 0, AnsiHighlightSession.lineCount(doc) - 1);
+                entries.stamp = stamp;
+            }
+            return entries;
+        }
+    }
+
+    @Override
+    public void beforeDocumentChange(@NotNull DocumentEvent event) {
+        Document doc = event.getDocument();
+        Entries entries = doc.getUserData(KEY);
+        if (entries == null) return;
+        synchronized (entries) {
+            if (entries.stamp != doc.getModificationStamp()) return;
+            // A stack trace start depends on the line after it, so the window reaches one line further each way
+            int lineCount = AnsiHighlightSession.lineCount(doc);
+            int firstLine = Math.max(0, doc.getLineNumber(event.getOffset()) - 1);
+            int lastLine = Math.min(lineCount - 1, doc.getLineNumber(event.getOffset() + event.getOldLength()) + 1);
+            entries.windowStart = doc.getLineStartOffset(firstLine);
+            entries.windowEnd = doc.getLineEndOffset(lastLine);
+            entries.tracking = true;
+        }
+    }
+
+    @Override
+    public void documentChanged(@NotNull DocumentEvent event) {
+        Document doc = event.getDocument();
+        Entries entries = doc.getUserData(KEY);
+        if (entries == null) return;
+        synchronized (entries) {
+            if (!entries.tracking) return;
+            entries.tracking = false;
+            int delta = event.getNewLength() - event.getOldLength();
+            int newWindowEnd = entries.windowEnd + delta;
+            Entries window = new Entries();
+            window.scan(doc, doc.getLineNumber(entries.windowStart), doc.getLineNumber(newWindowEnd));
+            for (Kind kind : INDEXED) {
+                IntArrayList list = entries.of(kind);
+                int from = lowerBound(list, entries.windowStart);
+                int to = upperBound(list, entries.windowEnd);
+                for (int i = to; i < list.size(); i++) list.set(i, list.getInt(i) + delta);
+                list.removeElements(from, to);
+                IntArrayList added = window.of(kind);
+                list.addElements(from, added.elements(), 0, added.size());
+            }
+            entries.stamp = doc.getModificationStamp();
+        }
+    }
+
+    @Override
+    public void dispose() {
+    }
+
+    /** Index of the first element greater than {@code value}. */
+    private static int upperBound(IntArrayList list, int value) {
+        int lo = 0;
+        int hi = list.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (list.getInt(mid) <= value) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    /** Index of the first element not less than {@code value}. */
+    private static int lowerBound(IntArrayList list, int value) {
+        int lo = 0;
+        int hi = list.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (list.getInt(mid) < value) lo = mid + 1; else hi = mid;
+        }
+        return lo;
+    }
+
+    private static final class Entries {
+        final IntArrayList escapes = new IntArrayList();
+        final IntArrayList exceptions = new IntArrayList();
+        long stamp = -1;
+        boolean tracking;
+        int windowStart;
+        int windowEnd;
+
+        IntArrayList of(Kind kind) {
+            return switch (kind) {
+                case ANSI -> escapes;
+                case EXCEPTION -> exceptions;
+                default -> throw new IllegalArgumentException("Not indexed here: " + kind);
+            };
+        }
+
+        /** Appends the targets on lines {@code firstLine..lastLine}. */
+        void scan(Document doc, int firstLine, int lastLine) {
+            CharSequence text = doc.getImmutableCharSequence();
+            int lineCount = AnsiHighlightSession.lineCount(doc);
+            AnsiSgrLexer lexer = new AnsiSgrLexer();
+            boolean frame = LogLineIndex.isStackFrame(text, doc.getLineStartOffset(firstLine), doc.getLineEndOffset(firstLine));
+            for (int line = firstLine; line <= lastLine; line++) {
+                int start = doc.getLineStartOffset(line);
+                int end = doc.getLineEndOffset(line);
+                lexer.reset(text, start, end);
+                while (lexer.next()) escapes.add(lexer.getStart());
+                // A stack trace starts at the line before its first frame, normally the exception message
+                boolean nextFrame = line + 1 < lineCount
+                        && LogLineIndex.isStackFrame(text, doc.getLineStartOffset(line + 1), doc.getLineEndOffset(line + 1));
+                if (!frame && nextFrame) exceptions.add(start);
+                frame = nextFrame;
+            }
+        }
+    }
+}
@@ -34,10 +34,14 @@ public class LogRecommendationEngine {
     }
     
     public static RecommendationPack analyzeAndRecommend(@NotNull String logContent) {
+        return analyzeAndRecommend(LogSnapshot.of(logContent));
+    }
+
+    public static RecommendationPack analyzeAndRecommend(@NotNull LogSnapshot log) {
         RecommendationPack pack = new RecommendationPack();
         
         // Analyze log content
-        AnalysisContext context = analyzeContext(logContent);
+        AnalysisContext context = analyzeContext(log);
         
         // Generate recommendations
         if (context.errorRate > 0.2) {
@@ -152,22 +156,21 @@ public class LogRecommendationEngine {
         int recommendationCount;
     }
     
-    private static AnalysisContext analyzeContext(@NotNull String logContent) {
+    private static AnalysisContext analyzeContext(@NotNull LogSnapshot log) {
         AnalysisContext context = new AnalysisContext();
-        String[] lines = logContent.split("\n");
         
         int errorCount = 0;
-        for (String line : lines) {
-            if (line.contains("ERROR") || line.contains("FATAL")) errorCount++;
-            if (line.contains("OutOfMemory") || line.contains("StackOverflow")) context.hasMemoryIssues = true;
-            if (line.contains("Connection refused") || line.contains("Connection timeout")) context.hasConnectivityIssues = true;
-            if (line.contains("Cache miss") || line.contains("cache miss")) context.hasCacheMissPatterns = true;
-            if (line.contains("slow query") || line.contains("query timeout")) context.hasSlowQueries = true;
-            if (line.contains("Unauthorized") || line.contains("Forbidden") || line.contains("PermissionDenied")) context.hasSecurityIssues = true;
+        for (int i = 0; i < log.getLineCount(); i++) {
+            if (log.contains(i, "ERROR") || log.contains(i, "FATAL")) errorCount++;
+            if (log.contains(i, "OutOfMemory") || log.contains(i, "StackOverflow")) context.hasMemoryIssues = true;
+            if (log.contains(i, "Connection refused") || log.contains(i, "Connection timeout")) context.hasConnectivityIssues = true;
+            if (log.contains(i, "Cache miss") || log.contains(i, "cache miss")) context.hasCacheMissPatterns = true;
+            if (log.contains(i, "slow query") || log.contains(i, "query timeout")) context.hasSlowQueries = true;
+            if (log.contains(i, "Unauthorized") || log.contains(i, "Forbidden") || log.contains(i, "PermissionDenied")) context.hasSecurityIssues = true;
         }
         
-        context.errorRate = (double) errorCount / Math.max(lines.length, 1);
-        context.logVerbosity = logContent.length();
+        context.errorRate = (double) errorCount / Math.max(log.getLineCount(), 1);
+        context.logVerbosity = log.getText().length();
         context.recommendationCount = 0;
         if (context.hasMemoryIssues) context.recommendationCount++;
         if (context.hasConnectivityIssues) context.recommendationCount++;
@@ -0,0 +1,116 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.util.Key;
+import com.intellij.util.text.CharSequenceSubSequence;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Immutable text of a log with the start offset of every line, for analyzers that work line by line.
+ * Lines are separated by {@code '\n'}; a trailing separator does not start another line, as with
+ * {@code split("\n")}, and an empty text has no lines. Lines are read as zero-copy views or tested in
+ * place, and only turned into strings where a result keeps them.
+ * <p>
+ * The snapshot of a document is built once per modification stamp and shared by every analyzer
+ * run against that state of the document.
+ */
+public final class LogSnapshot {
+    private static final Key<LogSnapshot> KEY = Key.create("AnsiLogSnapshot");
+
+    private final CharSequence text;
+    /** Start offset of each line, followed by the end of the last line plus one. */
+    private final int[] lineStarts;
+    private final int lineCount;
+    /** Modification stamp of the document it was taken from, or -1. */
+    private final long stamp;
+
+    private LogSnapshot(@NotNull CharSequence text, int @NotNull [] lineStarts, int lineCount, long stamp) {
+        this.text = text;
+        this.lineStarts = lineStarts;
+        this.lineCount = lineCount;
+        this.stamp = stamp;
+    }
+
+    /** Snapshot of the current document text, shared until the document changes. */
+    public static @NotNull LogSnapshot of(@NotNull Document doc) {
+        long stamp = doc.getModificationStamp();
+        LogSnapshot cached = doc.getUserData(KEY);
+        if (cached != null && cached.stamp == stamp) return cached;
+        LogSnapshot snapshot = build(doc.getImmutableCharSequence(), stamp);
+        doc.putUserData(KEY, snapshot);
+        return snapshot;
+    }
+
+    /** Snapshot of arbitrary text; not cached. */
+    public static @NotNull LogSnapshot of(@NotNull CharSequence text) {
+        return build(text, -1);
+    }
+
+    private static LogSnapshot build(CharSequence text, long stamp) {
+        int length = text.length();
+        if (length == 0) return new LogSnapshot(text, new int[]{0}, 0, stamp);
+        int[] starts = new int[Math.max(16, length / 64)];
+        int count = 0;
+        starts[count++] = 0;
+        for (int i = 0; i < length - 1; i++) {
+            if (text.charAt(i) != '\n') continue;
+            if (count + 1 == starts.length) starts = Arrays.copyOf(starts, count * 2);
+            starts[count++] = i + 1;
+        }
+        // The end of the last line excludes a trailing separator
+        starts[count] = text.charAt(length - 1) == '\n' ? length : length + 1;
+        return new LogSnapshot(text, count + 1 < starts.length ? Arrays.copyOf(starts, count + 1) : starts, count, stamp);
+    }
+
+    public @NotNull CharSequence getText() {
+        return text;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public int getLineStart(int line) {
+        return lineStarts[line];
+    }
+
+    /** End of the line, excluding its separator. */
+    public int getLineEnd(int line) {
+        return lineStarts[line + 1] - 1;
+    }
+
+    public int getLineLength(int line) {
+        return getLineEnd(line) - getLineStart(line);
+    }
+
+    /** The line without copying its characters. */
+    public @NotNull CharSequence getLineView(int line) {
+        return new CharSequenceSubSequence(text, getLineStart(line), getLineEnd(line));
+    }
+
+    /** The line as a string, copied from the text. */
+    public @NotNull String getLine(int line) {
+        return text.subSequence(getLineStart(line), getLineEnd(line)).toString();
+    }
+
+    /** True if the line contains {@code word}, tested without copying the line. */
+    public boolean contains(int line, @NotNull String word) {
+        return indexOf(line, word) >= 0;
+    }
+
+    /** Offset of {@code word} within the line, or -1. */
+    public int indexOf(int line, @NotNull String word) {
+        int start = getLineStart(line);
+        int last = getLineEnd(line) - word.length();
+        outer:
+        for (int i = start; i <= last; i++) {
+            for (int k = 0; k < word.length(); k++) {
+                if (text.charAt(i + k) != word.charAt(k)) continue outer;
+            }
+            return i - start;
+        }
+        return -1;
+    }
+}
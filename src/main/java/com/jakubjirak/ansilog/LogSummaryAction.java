@@ -14,8 +14,7 @@ public class LogSummaryAction extends AnAction {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
         if (editor == null) return;
         
-        String text = editor.getDocument().getText();
-        String[] lines = text.split("\n");
+        LogSnapshot log = LogSnapshot.of(editor.getDocument());
         
         // Build comprehensive summary
         StringBuilder summary = new StringBuilder();
@@ -27,8 +26,9 @@ public class LogSummaryAction extends AnAction {
         List<String> warnings = new ArrayList<>();
         Set<String> keywords = new HashSet<>();
         
-        for (String line : lines) {
-            String clean = line.replaceAll("(?:\u001B|\\u001B)\\[[0-9;]*m", "").trim();
+        AnsiStripper stripper = new AnsiStripper();
+        for (int i = 0; i < log.getLineCount(); i++) {
+            String clean = stripper.strip(log.getText(), log.getLineStart(i), log.getLineEnd(i)).toString().trim();
             if (clean.isEmpty()) continue;
             
             String upper = clean.toUpperCase();
@@ -52,7 +52,7 @@ public class LogSummaryAction extends AnAction {
         }
         
         summary.append("STATISTICS:\n");
-        summary.append("- Total lines: ").append(lines.length).append("\n");
+        summary.append("- Total lines: ").append(log.getLineCount()).append("\n");
         summary.append("- Errors: ").append(errorCount).append("\n");
         summary.append("- Warnings: ").append(warnCount).append("\n");
         summary.append("- Info: ").append(infoCount).append("\n\n");
@@ -92,7 +92,7 @@ public class LogSummaryAction extends AnAction {
                 "Summary copied to clipboard!\n\n" +
                 "Errors: " + errorCount + "\n" +
                 "Warnings: " + warnCount + "\n" +
-                "Total lines: " + lines.length + "\n\n" +
+                "Total lines: " + log.getLineCount() + "\n\n" +
                 "Paste into Copilot Chat for AI analysis.",
                 "Log Summary"
         );
@@ -106,6 +106,6 @@ public class LogSummaryAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        e.getPresentation().setEnabled(editor != null && !editor.getDocument().getText().isEmpty());
+        e.getPresentation().setEnabled(editor != null && editor.getDocument().getTextLength() > 0);
     }
 }
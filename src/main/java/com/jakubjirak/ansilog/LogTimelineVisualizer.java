@@ -37,18 +37,21 @@ public class LogTimelineVisualizer {
     }
     
     public static Timeline analyzeTimeline(@NotNull String content) {
+        return analyzeTimeline(LogSnapshot.of(content));
+    }
+
+    public static Timeline analyzeTimeline(@NotNull LogSnapshot lines) {
         Timeline timeline = new Timeline();
-        String[] lines = content.split("\n");
         
         Pattern timestampPattern = Pattern.compile(
             "(\\d{4}-\\d{2}-\\d{2})[\\s T](\\d{2}:\\d{2}:\\d{2}(?:\\.\\d{3})?)"
         );
+        Matcher matcher = timestampPattern.matcher("");
         
-        for (int i = 0; i < lines.length; i++) {
-            String line = lines[i];
-            Matcher matcher = timestampPattern.matcher(line);
-            
-            if (matcher.find()) {
+        for (int i = 0; i < lines.getLineCount(); i++) {
+            // Only lines with a timestamp are copied
+            if (matcher.reset(lines.getLineView(i)).find()) {
+                String line = lines.getLine(i);
                 try {
                     LocalDateTime timestamp = parseTimestamp(matcher.group(1), matcher.group(2));
                     String level = extractLevel(line);
@@ -0,0 +1,137 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.FoldRegion;
+import com.intellij.openapi.editor.FoldingModel;
+import com.intellij.openapi.util.Key;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps lines longer than {@link AnsiLogSettingsState#getLongLineThreshold()} cheap to show. The parsers
+ * style such a line only up to the cutoff and fold the rest behind a placeholder, which can be expanded
+ * on demand with {@link ExpandLongLineAction}. The style at the end of the line is still tracked, so the
+ * lines after it are colored correctly.
+ */
+public final class LongLineGuard {
+    /** Lower bound of the configurable threshold; shorter lines never need the settings lookup. */
+    static final int MIN_THRESHOLD = 1000;
+    private static final Key<LongLineGuard> KEY = Key.create("AnsiLongLineGuard");
+
+    /** Tail folds in offset order. */
+    private final List<FoldRegion> regions = new ArrayList<>();
+
+    private LongLineGuard() {}
+
+    public static int getThreshold() {
+        return AnsiLogSettingsState.getInstance().getLongLineThreshold();
+    }
+
+    /** End of the styled part of the line: the line end, or the cutoff if the line is too long. */
+    static int cutoff(int lineStart, int lineEnd) {
+        if (lineEnd - lineStart <= MIN_THRESHOLD) return lineEnd;
+        return Math.min(lineEnd, lineStart + getThreshold());
+    }
+
+    public static boolean isLong(@NotNull CharSequence line) {
+        return isLong(line.length());
+    }
+
+    public static boolean isLong(int lineLength) {
+        return lineLength > MIN_THRESHOLD && lineLength > getThreshold();
+    }
+
+    /** The line cut at the threshold, with the number of characters left out, for reports. */
+    public static @NotNull String abbreviate(@NotNull String line) {
+        if (!isLong(line)) return line;
+        int threshold = getThreshold();
+        return line.substring(0, threshold) + placeholder(line.length() - threshold);
+    }
+
+    /** Tail fold of the line at {@code offset}, or null if the line is not folded. */
+    public static @Nullable FoldRegion findTail(@NotNull Editor editor, int offset) {
+        LongLineGuard guard = editor.getUserData(KEY);
+        if (guard == null) return null;
+        Document doc = editor.getDocument();
+        int line = doc.getLineNumber(offset);
+        int lineStart = doc.getLineStartOffset(line);
+        int lineEnd = doc.getLineEndOffset(line);
+        for (FoldRegion region : guard.regions) {
+            if (region.isValid() && region.getStartOffset() > lineStart && region.getEndOffset() == lineEnd) return region;
+        }
+        return null;
+    }
+
+    /** Makes the tail folds of the lines overlapping {@code [start, end]} match the current text. */
+    static void sync(@NotNull Editor editor, int start, int end) {
+        Document doc = editor.getDocument();
+        LongLineGuard guard = editor.getUserData(KEY);
+        if (guard == null) {
+            guard = new LongLineGuard();
+            editor.putUserData(KEY, guard);
+        }
+        int length = doc.getTextLength();
+        int firstLine = doc.getLineNumber(Math.min(start, length));
+        int lastLine = doc.getLineNumber(Math.min(Math.max(start, end), length));
+        int rangeStart = doc.getLineStartOffset(firstLine);
+        int rangeEnd = doc.getLineEndOffset(lastLine);
+
+        List<FoldRegion> regions = guard.regions;
+        List<FoldRegion> stale = new ArrayList<>();
+        regions.removeIf(region -> {
+            if (!region.isValid()) return true;
+            boolean inRange = region.getStartOffset() >= rangeStart && region.getStartOffset() <= rangeEnd;
+            if (!inRange || isTailOf(doc, region)) return false;
+            stale.add(region);
+            return true;
+        });
+        List<int[]> missing = new ArrayList<>();
+        for (int line = firstLine; line <= lastLine; line++) {
+            int lineStart = doc.getLineStartOffset(line);
+            int lineEnd = doc.getLineEndOffset(line);
+            int cutoff = cutoff(lineStart, lineEnd);
+            if (cutoff < lineEnd && !contains(regions, cutoff, lineEnd)) missing.add(new int[]{cutoff, lineEnd});
+        }
+        if (stale.isEmpty() && missing.isEmpty()) return;
+
+        FoldingModel foldingModel = editor.getFoldingModel();
+        foldingModel.runBatchFoldingOperation(() -> {
+            for (FoldRegion region : stale) foldingModel.removeFoldRegion(region);
+            for (int[] tail : missing) {
+                try {
+                    FoldRegion added = foldingModel.addFoldRegion(tail[0], tail[1], placeholder(tail[1] - tail[0]));
+                    if (added != null) {
+                        added.setExpanded(false);
+                        regions.add(added);
+                    }
+                } catch (Exception e) {
+                    // Ignore fold creation errors
+                }
+            }
+        });
+        regions.sort((a, b) -> Integer.compare(a.getStartOffset(), b.getStartOffset()));
+    }
+
+    /** True if the region still starts at the cutoff of its line and ends at the line end. */
+    private static boolean isTailOf(Document doc, FoldRegion region) {
+        int line = doc.getLineNumber(region.getStartOffset());
+        int lineStart = doc.getLineStartOffset(line);
+        int lineEnd = doc.getLineEndOffset(line);
+        return region.getEndOffset() == lineEnd && region.getStartOffset() == cutoff(lineStart, lineEnd);
+    }
+
+    private static boolean contains(List<FoldRegion> regions, int start, int end) {
+        for (FoldRegion region : regions) {
+            if (region.getStartOffset() == start && region.getEndOffset() == end) return true;
+        }
+        return false;
+    }
+
+    private static String placeholder(int hidden) {
+        return String.format(" … %,d more characters", hidden);
+    }
+}
@@ -40,6 +40,11 @@ public class MasterLogAnalyzer {
     }
     
     public static ComprehensiveAnalysis analyzeComplete(@NotNull String logContent) {
+        return analyzeComplete(LogSnapshot.of(logContent));
+    }
+
+    /** Runs every analyzer over one shared snapshot, so the log is split into lines only once. */
+    public static ComprehensiveAnalysis analyzeComplete(@NotNull LogSnapshot logContent) {
         long startTime = System.currentTimeMillis();
         ComprehensiveAnalysis analysis = new ComprehensiveAnalysis();
         
@@ -60,7 +65,7 @@ public class MasterLogAnalyzer {
             analysis.alertMetrics = alertEngine.getMetrics();
             
             // 5. Log Clustering
-            int clusterCount = Math.max(3, (int) Math.sqrt(logContent.split("\n").length / 100));
+            int clusterCount = Math.max(3, (int) Math.sqrt(logContent.getLineCount() / 100));
             analysis.clustering = LogClusteringEngine.clusterLogs(logContent, clusterCount);
             
             // 6. Recommendations
@@ -25,6 +25,8 @@ public class MemoryMonitorAction extends AnAction {
         String heapMaxMB = formatBytes(heapMax);
         String nonHeapMB = formatBytes(nonHeapUsed);
         
+        AnsiMarkupBudget budget = AnsiMarkupBudget.getInstance();
+
         String stats = String.format(
                 "Memory & Performance Stats:\n\n" +
                 "File size: %s\n" +
@@ -32,6 +34,8 @@ public class MemoryMonitorAction extends AnAction {
                 "Non-heap memory: %s\n" +
                 "Heap usage: %.1f%%\n" +
                 "\nCache size: %d entries\n" +
+                "Highlighters and folds: %,d / %,d budget\n" +
+                "Open logs in all projects: %d (%d released while hidden)\n" +
                 "Processors: %d",
                 fileSize,
                 heapUsedMB,
@@ -39,6 +43,10 @@ public class MemoryMonitorAction extends AnAction {
                 nonHeapMB,
                 (heapUsed * 100.0 / heapMax),
                 AnsiCodeCache.getInstance().size(),
+                budget.getUsage(),
+                AnsiLogSettingsState.getInstance().getMarkupBudget(),
+                budget.getModelCount(),
+                budget.getDroppedCount(),
                 Runtime.getRuntime().availableProcessors()
         );
         
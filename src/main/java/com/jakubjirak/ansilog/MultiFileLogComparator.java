@@ -23,8 +23,8 @@ public class MultiFileLogComparator {
     public static ComparisonResult compareFiles(@NotNull String log1, @NotNull String log2) {
         ComparisonResult result = new ComparisonResult();
         
-        Set<String> lines1 = new HashSet<>(Arrays.asList(log1.split("\n")));
-        Set<String> lines2 = new HashSet<>(Arrays.asList(log2.split("\n")));
+        Set<String> lines1 = distinctLines(LogSnapshot.of(log1));
+        Set<String> lines2 = distinctLines(LogSnapshot.of(log2));
         
         // Common lines
         for (String line : lines1) {
@@ -48,11 +48,19 @@ public class MultiFileLogComparator {
         
         // Similarity
         int maxSize = Math.max(lines1.size(), lines2.size());
-        result.similarity = (result.commonLines.size() * 100.0) / maxSize;
+        result.similarity = (result.commonLines.size() * 100.0) / Math.max(1, maxSize);
         
         return result;
     }
     
+    private static Set<String> distinctLines(@NotNull LogSnapshot log) {
+        Set<String> lines = new HashSet<>();
+        for (int i = 0; i < log.getLineCount(); i++) {
+            lines.add(log.getLine(i));
+        }
+        return lines;
+    }
+    
     public static Map<String, List<String>> groupByPattern(@NotNull List<String> logs, @NotNull String pattern) {
         Map<String, List<String>> groups = new LinkedHashMap<>();
         
@@ -50,7 +50,6 @@ public class NormalizeAnsiCodesAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        String text = editor != null ? editor.getDocument().getText() : "";
-        e.getPresentation().setEnabled(!text.isEmpty() && (text.contains("\u001B") || text.contains("\\u001B")));
+        e.getPresentation().setEnabled(editor != null && AnsiDocumentFacts.getInstance().hasAnsi(editor.getDocument()));
     }
 }
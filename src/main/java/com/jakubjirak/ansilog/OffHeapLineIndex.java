@@ -0,0 +1,152 @@
+package com.jakubjirak.ansilog;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+/**
+ * Start offsets of the lines of a file, kept in direct buffers outside the Java heap. Lines are grouped
+ * in blocks of {@link #BLOCK_LINES}. A table with one fixed-size entry per block holds the first offset
+ * of the block, the position of its remaining offsets, and one caller-defined mark, such as the SGR
+ * style in effect at the block's first line. The remaining offsets are stored as varint-encoded deltas,
+ * one or two bytes for typical log lines. Looking up a line is one table read plus at most
+ * {@code BLOCK_LINES - 1} decoded deltas; the heap holds only the buffer objects.
+ * <p>
+ * Lines are appended in order by one thread and may be read by others at the same time.
+ */
+public final class OffHeapLineIndex {
+    public static final int BLOCK_LINES = 64;
+    /** Size of one buffer of encoded deltas; a block never spans two of them. */
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final int MAX_VARINT_BYTES = 10;
+    /** Longs per table entry: first offset, position of the deltas, mark. */
+    private static final int ENTRY_LONGS = 3;
+
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int chunkCount;
+    private LongBuffer table = allocateTable(1024);
+    private long lineCount;
+    private long lastStart;
+
+    /** Appends the start of the next line; {@code mark} is kept only for the first line of a block. */
+    public synchronized void add(long lineStart, long mark) {
+        int inBlock = (int) (lineCount % BLOCK_LINES);
+        if (inBlock == 0) {
+            ByteBuffer chunk = chunkCount > 0 ? chunks[chunkCount - 1] : null;
+            if (chunk == null || chunk.remaining() < (BLOCK_LINES - 1) * MAX_VARINT_BYTES) chunk = addChunk();
+            int entry = (int) (lineCount / BLOCK_LINES) * ENTRY_LONGS;
+            if (entry + ENTRY_LONGS > table.capacity()) table = grow(table);
+            table.put(entry, lineStart);
+            table.put(entry + 1, (long) (chunkCount - 1) * CHUNK_SIZE + chunk.position());
+            table.put(entry + 2, mark);
+        } else {
+            writeVarint(chunks[chunkCount - 1], lineStart - lastStart);
+        }
+        lastStart = lineStart;
+        lineCount++;
+    }
+
+    public synchronized long getLineCount() {
+        return lineCount;
+    }
+
+    /** Start offset of a line below {@link #getLineCount()}. */
+    public synchronized long getLineStart(long line) {
+        int block = (int) (line / BLOCK_LINES);
+        int entry = block * ENTRY_LONGS;
+        long start = table.get(entry);
+        long position = table.get(entry + 1);
+        ByteBuffer chunk = chunks[(int) (position / CHUNK_SIZE)];
+        int pos = (int) (position % CHUNK_SIZE);
+        for (int i = (int) (line % BLOCK_LINES); i > 0; i--) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = chunk.get(pos++);
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            start += delta;
+        }
+        return start;
+    }
+
+    /** Last indexed line starting at or before the offset, or -1 if there is none. */
+    public synchronized long getLineNumber(long offset) {
+        int block = findBlock(offset);
+        if (block < 0) return -1;
+        int entry = block * ENTRY_LONGS;
+        long start = table.get(entry);
+        long position = table.get(entry + 1);
+        ByteBuffer chunk = chunks[(int) (position / CHUNK_SIZE)];
+        int pos = (int) (position % CHUNK_SIZE);
+        long line = (long) block * BLOCK_LINES;
+        long last = Math.min(lineCount, line + BLOCK_LINES) - 1;
+        while (line < last) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = chunk.get(pos++);
+                delta |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            start += delta;
+            if (start > offset) break;
+            line++;
+        }
+        return line;
+    }
+
+    /** Last block whose first line starts at or before the offset, or -1. */
+    public synchronized int findBlock(long offset) {
+        int lo = 0;
+        int hi = getBlockCount();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (table.get(mid * ENTRY_LONGS) <= offset) lo = mid + 1; else hi = mid;
+        }
+        return lo - 1;
+    }
+
+    public synchronized int getBlockCount() {
+        return (int) ((lineCount + BLOCK_LINES - 1) / BLOCK_LINES);
+    }
+
+    /** Start offset of the first line of a block. */
+    public synchronized long getBlockStart(int block) {
+        return table.get(block * ENTRY_LONGS);
+    }
+
+    /** Mark given with the first line of a block. */
+    public synchronized long getBlockMark(int block) {
+        return table.get(block * ENTRY_LONGS + 2);
+    }
+
+    private ByteBuffer addChunk() {
+        if (chunkCount == chunks.length) chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        ByteBuffer chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        chunks[chunkCount++] = chunk;
+        return chunk;
+    }
+
+    private static void writeVarint(ByteBuffer chunk, long value) {
+        while ((value & ~0x7FL) != 0) {
+            chunk.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        chunk.put((byte) value);
+    }
+
+    private static LongBuffer allocateTable(int longs) {
+        return ByteBuffer.allocateDirect(longs * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    private static LongBuffer grow(LongBuffer table) {
+        LongBuffer grown = allocateTable(table.capacity() * 2);
+        grown.put(table.duplicate().clear());
+        return grown.clear();
+    }
+}
@@ -0,0 +1,37 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.actionSystem.AnAction;
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.actionSystem.PlatformDataKeys;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+
+/** Opens the log as a read-only stripped document instead of folding every escape sequence. */
+public class OpenCleanViewAction extends AnAction {
+    @Override
+    public void actionPerformed(@NotNull AnActionEvent e) {
+        Editor editor = e.getData(PlatformDataKeys.EDITOR);
+        VirtualFile file = e.getData(PlatformDataKeys.VIRTUAL_FILE);
+        Project project = e.getProject();
+        if (editor == null || file == null || project == null) return;
+
+        Document doc = editor.getDocument();
+        int caret = editor.getCaretModel().getOffset();
+        ReadAction.nonBlocking(() -> AnsiCleanView.build(file, doc.getImmutableCharSequence()))
+                .expireWith(project)
+                .finishOnUiThread(ModalityState.defaultModalityState(), view -> view.open(project, caret))
+                .submit(AppExecutorUtil.getAppExecutorService());
+    }
+
+    @Override
+    public void update(@NotNull AnActionEvent e) {
+        VirtualFile file = e.getData(PlatformDataKeys.VIRTUAL_FILE);
+        e.getPresentation().setEnabled(e.getData(PlatformDataKeys.EDITOR) != null && file != null && AnsiCleanView.getInstance(file) == null);
+    }
+}
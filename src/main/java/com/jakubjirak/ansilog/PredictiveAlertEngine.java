@@ -2,6 +2,8 @@ package com.jakubjirak.ansilog;
 
 import org.jetbrains.annotations.NotNull;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 public class PredictiveAlertEngine {
     
@@ -84,19 +86,23 @@ public class PredictiveAlertEngine {
     }
     
     public List<PredictedAlert> predictAlerts(@NotNull String logContent) {
+        return predictAlerts(LogSnapshot.of(logContent));
+    }
+
+    public List<PredictedAlert> predictAlerts(@NotNull LogSnapshot lines) {
         List<PredictedAlert> alerts = new ArrayList<>();
-        String[] lines = logContent.split("\n");
         
         for (AlertRule rule : rules) {
-            int matchCount = countMatches(logContent, rule.pattern);
+            int matchCount = countMatches(lines.getText(), rule.pattern);
             
             if (matchCount > 0) {
                 double probability = Math.min(1.0, (double) matchCount / rule.threshold);
                 PredictedAlert alert = new PredictedAlert(rule.name, probability);
                 alert.severity = rule.severity;
-                alert.predictedTimeMs = calculatePredictedTime(lines, rule.pattern);
+                Matcher matcher = Pattern.compile(rule.pattern, Pattern.CASE_INSENSITIVE).matcher("");
+                alert.predictedTimeMs = calculatePredictedTime(lines, matcher);
                 alert.reason = generateReason(rule, matchCount);
-                alert.evidence = extractEvidence(lines, rule.pattern, 3);
+                alert.evidence = extractEvidence(lines, matcher, 3);
                 
                 alerts.add(alert);
                 metrics.alertCounts.merge(rule.name, 1, Integer::sum);
@@ -114,9 +120,9 @@ public class PredictiveAlertEngine {
         return alerts;
     }
     
-    private int countMatches(@NotNull String content, @NotNull String pattern) {
+    private int countMatches(@NotNull CharSequence content, @NotNull String pattern) {
         try {
-            return (int) java.util.regex.Pattern.compile(pattern, java.util.regex.Pattern.CASE_INSENSITIVE)
+            return (int) Pattern.compile(pattern, Pattern.CASE_INSENSITIVE)
                     .matcher(content)
                     .results()
                     .count();
@@ -125,15 +131,15 @@ public class PredictiveAlertEngine {
         }
     }
     
-    private long calculatePredictedTime(String[] lines, String pattern) {
+    private long calculatePredictedTime(LogSnapshot lines, Matcher matcher) {
         int lastMatchLine = -1;
-        for (int i = lines.length - 1; i >= 0; i--) {
-            if (lines[i].matches("(?i).*" + pattern + ".*")) {
+        for (int i = lines.getLineCount() - 1; i >= 0; i--) {
+            if (matcher.reset(lines.getLineView(i)).find()) {
                 lastMatchLine = i;
                 break;
             }
         }
-        return lastMatchLine >= 0 ? (lines.length - lastMatchLine) * 100 : 0;
+        return lastMatchLine >= 0 ? (lines.getLineCount() - lastMatchLine) * 100 : 0;
     }
     
     private String generateReason(@NotNull AlertRule rule, int matchCount) {
@@ -141,13 +147,13 @@ public class PredictiveAlertEngine {
                 rule.name, matchCount, rule.threshold);
     }
     
-    private List<String> extractEvidence(String[] lines, String pattern, int maxCount) {
+    private List<String> extractEvidence(LogSnapshot lines, Matcher matcher, int maxCount) {
         List<String> evidence = new ArrayList<>();
         int count = 0;
         
-        for (int i = lines.length - 1; i >= 0 && count < maxCount; i--) {
-            if (lines[i].matches("(?i).*" + pattern + ".*")) {
-                evidence.add(0, truncate(lines[i], 80));
+        for (int i = lines.getLineCount() - 1; i >= 0 && count < maxCount; i--) {
+            if (matcher.reset(lines.getLineView(i)).find()) {
+                evidence.add(0, truncate(lines.getLine(i), 80));
                 count++;
             }
         }
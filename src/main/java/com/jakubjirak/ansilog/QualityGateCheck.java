@@ -1,5 +1,6 @@
 package com.jakubjirak.ansilog;
 
+import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
 import java.util.*;
 
@@ -34,18 +35,24 @@ public class QualityGateCheck {
     }
     
     public static QualityReport runQualityGates(@NotNull String logContent) {
+        return runQualityGates(LogSnapshot.of(logContent));
+    }
+
+    public static QualityReport runQualityGates(@NotNull LogSnapshot log) {
         QualityReport report = new QualityReport();
+        CharSequence logContent = log.getText();
+        int lineCount = Math.max(1, log.getLineCount());
         
         // Gate 1: Error Rate
         QualityGate errorGate = new QualityGate("Error Rate", 1);
-        double errorRate = countOccurrences(logContent, "ERROR|FATAL") / (double) logContent.split("\n").length;
+        double errorRate = countOccurrences(logContent, "ERROR|FATAL") / (double) lineCount;
         errorGate.passed = errorRate < 0.2;
         if (!errorGate.passed) errorGate.errorMessage = "Error rate exceeds 20%";
         report.gates.add(errorGate);
         
         // Gate 2: Memory Safety
         QualityGate memoryGate = new QualityGate("Memory Safety", 1);
-        memoryGate.passed = !logContent.contains("OutOfMemoryError") && !logContent.contains("StackOverflowError");
+        memoryGate.passed = !StringUtil.contains(logContent, "OutOfMemoryError") && !StringUtil.contains(logContent, "StackOverflowError");
         if (!memoryGate.passed) memoryGate.errorMessage = "Memory errors detected";
         report.gates.add(memoryGate);
         
@@ -58,13 +65,13 @@ public class QualityGateCheck {
         
         // Gate 4: Security
         QualityGate securityGate = new QualityGate("Security", 1);
-        securityGate.passed = !logContent.contains("Unauthorized") && !logContent.contains("PermissionDenied");
+        securityGate.passed = !StringUtil.contains(logContent, "Unauthorized") && !StringUtil.contains(logContent, "PermissionDenied");
         if (!securityGate.passed) securityGate.errorMessage = "Security/authorization issues found";
         report.gates.add(securityGate);
         
         // Gate 5: Data Integrity
         QualityGate integrityGate = new QualityGate("Data Integrity", 1);
-        integrityGate.passed = !logContent.contains("data corruption") && !logContent.contains("inconsistency");
+        integrityGate.passed = !StringUtil.contains(logContent, "data corruption") && !StringUtil.contains(logContent, "inconsistency");
         if (!integrityGate.passed) integrityGate.errorMessage = "Data integrity issues detected";
         report.gates.add(integrityGate);
         
@@ -77,13 +84,15 @@ public class QualityGateCheck {
         
         // Gate 7: Consistency
         QualityGate consistencyGate = new QualityGate("Log Consistency", 3);
-        String[] lines = logContent.split("\n");
         int malformedLines = 0;
-        for (String line : lines) {
-            if (line.length() > 5000) malformedLines++;
+        for (int i = 0; i < log.getLineCount(); i++) {
+            if (LongLineGuard.isLong(log.getLineLength(i))) malformedLines++;
+        }
+        consistencyGate.passed = malformedLines < lineCount * 0.01;
+        if (!consistencyGate.passed) {
+            consistencyGate.errorMessage = String.format("Malformed log entries detected: %d lines over %,d characters",
+                    malformedLines, LongLineGuard.getThreshold());
         }
-        consistencyGate.passed = malformedLines < lines.length * 0.01;
-        if (!consistencyGate.passed) consistencyGate.errorMessage = "Malformed log entries detected";
         report.gates.add(consistencyGate);
         
         // Calculate report statistics
@@ -102,7 +111,7 @@ public class QualityGateCheck {
         return report;
     }
     
-    private static int countOccurrences(@NotNull String content, @NotNull String pattern) {
+    private static int countOccurrences(@NotNull CharSequence content, @NotNull String pattern) {
         try {
             return (int) java.util.regex.Pattern.compile(pattern, java.util.regex.Pattern.CASE_INSENSITIVE)
                     .matcher(content)
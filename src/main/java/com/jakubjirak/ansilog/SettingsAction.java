@@ -113,7 +113,9 @@ public class SettingsAction extends AnAction {
             state.setExtensions(parse());
             state.setHideAnsiCodes(hideAnsiCodesCheckbox.isSelected());
             state.setShowAnsiCodesOnCursor(showOnCursorCheckbox.isSelected());
+            boolean themeChanged = state.isDarkTheme() != darkThemeCheckbox.isSelected();
             state.setDarkTheme(darkThemeCheckbox.isSelected());
+            if (themeChanged) AnsiPalette.apply();
             super.doOKAction();
         }
 
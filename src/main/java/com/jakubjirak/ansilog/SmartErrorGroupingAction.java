@@ -22,7 +22,7 @@ public class SmartErrorGroupingAction extends AnAction {
         Map<String, List<Integer>> errorLineNumbers = new HashMap<>();
         
         for (int i = 0; i < lines.length; i++) {
-            String line = lines[i].replaceAll("(?:\u001B|\\u001B)\\[[0-9;]*m", "");
+            String line = AnsiStripper.strip(lines[i]);
             if (line.toUpperCase().contains("ERROR")) {
                 // Extract error type (first meaningful part after ERROR)
                 String errorKey = extractErrorType(line);
@@ -74,7 +74,6 @@ public class SmartErrorGroupingAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        String text = editor != null ? editor.getDocument().getText() : "";
-        e.getPresentation().setEnabled(!text.isEmpty() && text.contains("ERROR"));
+        e.getPresentation().setEnabled(editor != null && AnsiDocumentFacts.getInstance().hasError(editor.getDocument()));
     }
 }
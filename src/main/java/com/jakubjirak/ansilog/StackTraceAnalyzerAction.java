@@ -24,7 +24,7 @@ public class StackTraceAnalyzerAction extends AnAction {
         StringBuilder currentTrace = new StringBuilder();
         
         for (String line : lines) {
-            String clean = line.replaceAll("(?:\u001B|\\u001B)\\[[0-9;]*m", "");
+            String clean = AnsiStripper.strip(line);
             
             if (clean.contains("at ") && clean.contains("(")) {
                 currentTrace.append(clean).append("\n");
@@ -81,7 +81,6 @@ public class StackTraceAnalyzerAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        String text = editor != null ? editor.getDocument().getText() : "";
-        e.getPresentation().setEnabled(!text.isEmpty() && text.contains("at "));
+        e.getPresentation().setEnabled(editor != null && AnsiDocumentFacts.getInstance().hasStackTrace(editor.getDocument()));
     }
 }
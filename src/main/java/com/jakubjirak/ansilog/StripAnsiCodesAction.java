@@ -13,8 +13,7 @@ public class StripAnsiCodesAction extends AnAction {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
         if (editor == null) return;
         
-        String text = editor.getDocument().getText();
-        String cleanText = text.replaceAll("(?:\\u001B|\\\\u001B)\\[[0-9;]*m", "");
+        String cleanText = AnsiStripper.strip(editor.getDocument().getImmutableCharSequence());
         
         WriteCommandAction.runWriteCommandAction(e.getProject(), () -> {
             editor.getDocument().setText(cleanText);
@@ -24,7 +23,6 @@ public class StripAnsiCodesAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        String text = editor != null ? editor.getDocument().getText() : "";
-        e.getPresentation().setEnabled(!text.isEmpty() && (text.contains("\u001B") || text.contains("\\u001B")));
+        e.getPresentation().setEnabled(editor != null && AnsiDocumentFacts.getInstance().hasAnsi(editor.getDocument()));
     }
 }
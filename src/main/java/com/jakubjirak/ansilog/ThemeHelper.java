@@ -3,34 +3,43 @@ package com.jakubjirak.ansilog;
 import java.awt.Color;
 
 public class ThemeHelper {
+    private static final Color DARK_INVISIBLE = new Color(30, 30, 30);
+    private static final Color LIGHT_INVISIBLE = new Color(255, 255, 255);
+    private static final Color DARK_HINT = new Color(100, 100, 100);
+    private static final Color LIGHT_HINT = new Color(150, 150, 150);
+    private static final Color DEFAULT_HIGHLIGHT = new Color(192, 192, 192);
+    /** Highlight colors of the SGR foreground codes 0-97; null where the default applies. */
+    private static final Color[] HIGHLIGHTS = new Color[98];
+
+    static {
+        HIGHLIGHTS[1] = HIGHLIGHTS[31] = new Color(255, 0, 0);
+        HIGHLIGHTS[32] = new Color(0, 255, 0);
+        HIGHLIGHTS[33] = new Color(255, 255, 0);
+        HIGHLIGHTS[34] = new Color(0, 0, 255);
+        HIGHLIGHTS[35] = new Color(255, 0, 255);
+        HIGHLIGHTS[36] = new Color(0, 255, 255);
+        HIGHLIGHTS[37] = new Color(255, 255, 255);
+        HIGHLIGHTS[90] = new Color(128, 128, 128);
+        HIGHLIGHTS[91] = new Color(255, 128, 128);
+        HIGHLIGHTS[92] = new Color(128, 255, 128);
+        HIGHLIGHTS[93] = new Color(255, 255, 128);
+        HIGHLIGHTS[94] = new Color(128, 128, 255);
+        HIGHLIGHTS[95] = new Color(255, 128, 255);
+        HIGHLIGHTS[96] = new Color(128, 255, 255);
+    }
     
     public static Color getInvisibleColor() {
         boolean isDark = AnsiLogSettingsState.getInstance().isDarkTheme();
-        return isDark ? new Color(30, 30, 30) : new Color(255, 255, 255);
+        return isDark ? DARK_INVISIBLE : LIGHT_INVISIBLE;
     }
     
     public static Color getHintColor() {
         boolean isDark = AnsiLogSettingsState.getInstance().isDarkTheme();
-        return isDark ? new Color(100, 100, 100) : new Color(150, 150, 150);
+        return isDark ? DARK_HINT : LIGHT_HINT;
     }
     
     public static Color getHighlightColor(int ansiCode) {
-        return switch(ansiCode) {
-            case 31, 1 -> new Color(255, 0, 0);
-            case 32 -> new Color(0, 255, 0);
-            case 33 -> new Color(255, 255, 0);
-            case 34 -> new Color(0, 0, 255);
-            case 35 -> new Color(255, 0, 255);
-            case 36 -> new Color(0, 255, 255);
-            case 37 -> new Color(255, 255, 255);
-            case 90 -> new Color(128, 128, 128);
-            case 91 -> new Color(255, 128, 128);
-            case 92 -> new Color(128, 255, 128);
-            case 93 -> new Color(255, 255, 128);
-            case 94 -> new Color(128, 128, 255);
-            case 95 -> new Color(255, 128, 255);
-            case 96 -> new Color(128, 255, 255);
-            default -> new Color(192, 192, 192);
-        };
+        Color color = ansiCode >= 0 && ansiCode < HIGHLIGHTS.length ? HIGHLIGHTS[ansiCode] : null;
+        return color != null ? color : DEFAULT_HIGHLIGHT;
     }
 }
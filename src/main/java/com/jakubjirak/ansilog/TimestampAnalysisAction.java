@@ -41,7 +41,7 @@ public class TimestampAnalysisAction extends AnAction {
                 
                 if (firstTime == null) {
                     firstTime = seconds;
-                    firstAndLastLines.add("START: " + time + " - " + line.replaceAll("(?:\u001B|\\u001B)\\[[0-9;]*m", ""));
+                    firstAndLastLines.add("START: " + time + " - " + AnsiStripper.strip(line));
                 }
                 lastTime = seconds;
             }
@@ -125,8 +125,6 @@ public class TimestampAnalysisAction extends AnAction {
     @Override
     public void update(@NotNull AnActionEvent e) {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
-        String text = editor != null ? editor.getDocument().getText() : "";
-        boolean hasTime = text.matches(".*\\d{1,2}:\\d{2}:\\d{2}.*");
-        e.getPresentation().setEnabled(hasTime);
+        e.getPresentation().setEnabled(editor != null && AnsiDocumentFacts.getInstance().hasTimestamp(editor.getDocument()));
     }
 }
@@ -17,8 +17,14 @@ public class ToggleAnsiVisibilityAction extends AnAction {
         AnsiLogSettingsState settings = AnsiLogSettingsState.getInstance();
         settings.setHideAnsiCodes(!settings.isHideAnsiCodes());
         
-        AnsiLogFileOpenListener listener = new AnsiLogFileOpenListener();
-        listener.applyAnsiHighlighting(editor);
+        // Only the folds depend on the setting; colors of a parsed document stay as they are
+        AnsiRenderModel model = e.getProject() != null && ViewportAnsiHighlighter.getInstance(editor) == null
+                ? AnsiRenderModelService.getInstance(e.getProject()).getModel(editor.getDocument()) : null;
+        if (model != null) {
+            model.refreshFolds();
+        } else {
+            AsyncAnsiProcessor.processAnsiCodesAsync(editor, e.getProject());
+        }
     }
 
     @Override
@@ -0,0 +1,239 @@
+package com.jakubjirak.ansilog;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ModalityState;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.editor.event.VisibleAreaEvent;
+import com.intellij.openapi.editor.event.VisibleAreaListener;
+import com.intellij.openapi.editor.ex.util.EditorUtil;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.util.Key;
+import com.intellij.util.Alarm;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Lazy highlighting mode: highlighters and folds exist only for the visible lines plus a margin.
+ * The SGR state is remembered at the start of every N-th line, so any block of N lines can be
+ * rendered without parsing the text above it. Checkpoints far ahead of the known ones, as after a
+ * jump to the end or an edit above the visible area, are computed in the background; the blocks
+ * that need them are rendered once they arrive. Blocks that scroll far out of view are released.
+ * Refreshes are timed; if {@link AnsiRenderController} finds them too slow, everything is released
+ * and the editor stays plain until {@link #rebuild} is requested.
+ */
+public class ViewportAnsiHighlighter implements VisibleAreaListener, DocumentListener, Disposable {
+    private static final Key<ViewportAnsiHighlighter> KEY = Key.create("ViewportAnsiHighlighter");
+    private static final int SCROLL_DELAY_MS = 50;
+    private static final int EDIT_DELAY_MS = 200;
+
+    private final Editor editor;
+    private final int interval;
+    private long[] checkpoints = new long[16];
+    private int checkpointCount;
+    /** Incremented whenever checkpoints are discarded, so a background catch-up started before is ignored. */
+    private int checkpointEpoch;
+    private boolean catchingUp;
+    private final BitSet materialized = new BitSet();
+    private final Alarm alarm = new Alarm(Alarm.ThreadToUse.SWING_THREAD, this);
+    private int firstChangedLine = -1;
+    private boolean plain;
+
+    private ViewportAnsiHighlighter(@NotNull Editor editor, int interval) {
+        this.editor = editor;
+        this.interval = interval;
+        checkpoints[checkpointCount++] = AnsiStyle.DEFAULT;
+    }
+
+    public static void install(@NotNull Editor editor) {
+        if (getInstance(editor) != null) return;
+        ViewportAnsiHighlighter highlighter = new ViewportAnsiHighlighter(editor,
+                AnsiRenderController.getInstance().getCheckpointInterval(editor.getDocument()));
+        editor.putUserData(KEY, highlighter);
+        EditorUtil.disposeWithEditor(editor, highlighter);
+        editor.getScrollingModel().addVisibleAreaListener(highlighter, highlighter);
+        editor.getDocument().addDocumentListener(highlighter, highlighter);
+        highlighter.refresh();
+    }
+
+    public static @Nullable ViewportAnsiHighlighter getInstance(@NotNull Editor editor) {
+        return editor.getUserData(KEY);
+    }
+
+    /** Drops everything rendered so far and renders the visible area again, e.g. after a settings change. */
+    public void rebuild() {
+        release(0);
+        plain = false;
+        AnsiRenderController.getInstance().reset(editor.getDocument());
+        refresh();
+    }
+
+    @Override
+    public void visibleAreaChanged(@NotNull VisibleAreaEvent e) {
+        alarm.cancelAllRequests();
+        alarm.addRequest(this::refresh, SCROLL_DELAY_MS);
+    }
+
+    @Override
+    public void documentChanged(@NotNull DocumentEvent event) {
+        int line = event.getDocument().getLineNumber(event.getOffset());
+        firstChangedLine = firstChangedLine < 0 ? line : Math.min(firstChangedLine, line);
+        alarm.cancelAllRequests();
+        alarm.addRequest(this::refresh, EDIT_DELAY_MS);
+    }
+
+    private void refresh() {
+        if (editor.isDisposed() || plain) return;
+        if (firstChangedLine >= 0) {
+            // Checkpoints up to the edited block stay valid; everything after it is recomputed on demand
+            int block = firstChangedLine / interval;
+            firstChangedLine = -1;
+            if (checkpointCount > block + 1) {
+                checkpointCount = block + 1;
+                checkpointEpoch++;
+            }
+            release(block);
+        }
+
+        Document doc = editor.getDocument();
+        int lineCount = AnsiHighlightSession.lineCount(doc);
+        Rectangle area = editor.getScrollingModel().getVisibleArea();
+        int firstVisible = editor.xyToLogicalPosition(new Point(0, area.y)).line;
+        int lastVisible = editor.xyToLogicalPosition(new Point(0, area.y + area.height)).line;
+        int margin = Math.max(interval, lastVisible - firstVisible);
+        int firstBlock = Math.max(0, firstVisible - margin) / interval;
+        int lastBlock = Math.min(lineCount - 1, lastVisible + margin) / interval;
+
+        // Keep a wider band than the one rendered so small scrolls do not thrash
+        int keepBlocks = 4 * (lastBlock - firstBlock + 1);
+        for (int b = materialized.nextSetBit(0); b >= 0; b = materialized.nextSetBit(b + 1)) {
+            if (b < firstBlock - keepBlocks || b > lastBlock + keepBlocks) {
+                releaseBlock(b);
+            }
+        }
+
+        CharSequence text = doc.getImmutableCharSequence();
+        AnsiSgrLexer lexer = new AnsiSgrLexer();
+        long start = System.nanoTime();
+        boolean rendered = false;
+        // Rendering a block records the checkpoint of the next one, so only the first may be missing
+        for (int b = firstBlock; b <= lastBlock && b < checkpointCount; b++) {
+            if (!materialized.get(b)) {
+                renderBlock(b, lexer, text, lineCount);
+                rendered = true;
+            }
+        }
+        if (checkpointCount <= firstBlock) catchUp(firstBlock);
+        if (rendered && AnsiRenderController.getInstance().recordViewportRefresh(doc, System.nanoTime() - start)) {
+            plain = true;
+            release(0);
+        }
+    }
+
+    private void renderBlock(int block, AnsiSgrLexer lexer, CharSequence text, int lineCount) {
+        Document doc = editor.getDocument();
+        long style = checkpoints[block];
+        IntArrayList escapes = new IntArrayList();
+        int firstLine = block * interval;
+        int lastLine = Math.min(lineCount, firstLine + interval) - 1;
+        for (int line = firstLine; line <= lastLine; line++) {
+            style = AnsiLogFileOpenListener.highlightLine(editor.getMarkupModel(), lexer, text, doc.getLineStartOffset(line), doc.getLineEndOffset(line), style, escapes);
+        }
+        AnsiLogFileOpenListener.updateFolds(editor, doc.getLineStartOffset(firstLine), doc.getLineEndOffset(lastLine), escapes);
+        materialized.set(block);
+        if (checkpointCount == block + 1 && lastLine + 1 < lineCount) addCheckpoint(style);
+    }
+
+    /**
+     * Computes the checkpoints up to the block in the background and refreshes once they are known.
+     * The work is not part of a timed refresh: it grows with the distance from the last checkpoint,
+     * not with the visible area.
+     */
+    private void catchUp(int block) {
+        if (catchingUp) return;
+        catchingUp = true;
+        Document doc = editor.getDocument();
+        int epoch = checkpointEpoch;
+        int fromBlock = checkpointCount - 1;
+        long fromStyle = checkpoints[fromBlock];
+        ReadAction.nonBlocking(() -> advanceCheckpoints(doc, interval, fromBlock, fromStyle, block))
+                .expireWith(this)
+                .finishOnUiThread(ModalityState.defaultModalityState(), styles -> {
+                    catchingUp = false;
+                    if (epoch == checkpointEpoch) {
+                        // A checkpoint is valid if no pending edit lies above its block
+                        int valid = firstChangedLine < 0 ? styles.length
+                                : Math.min(styles.length, firstChangedLine / interval - fromBlock);
+                        for (int i = checkpointCount - fromBlock - 1; i < valid; i++) addCheckpoint(styles[i]);
+                    }
+                    refresh();
+                })
+                .submit(AppExecutorUtil.getAppExecutorService());
+    }
+
+    /** Styles at the first lines of blocks {@code fromBlock + 1} to {@code toBlock}, parsed on from {@code fromBlock}. */
+    private static long[] advanceCheckpoints(Document doc, int interval, int fromBlock, long style, int toBlock) {
+        CharSequence text = doc.getImmutableCharSequence();
+        int lineCount = AnsiHighlightSession.lineCount(doc);
+        int lastBlock = Math.min(toBlock, (lineCount - 1) / interval);
+        AnsiSgrLexer lexer = new AnsiSgrLexer();
+        LongArrayList styles = new LongArrayList();
+        for (int b = fromBlock; b < lastBlock; b++) {
+            ProgressManager.checkCanceled();
+            int from = b * interval;
+            int to = Math.min(lineCount, from + interval);
+            lexer.reset(text, doc.getLineStartOffset(from), to < lineCount ? doc.getLineStartOffset(to) : doc.getTextLength());
+            while (lexer.next()) {
+                style = AnsiStyle.apply(style, lexer.getParams(), lexer.getParamCount());
+            }
+            styles.add(style);
+        }
+        return styles.toLongArray();
+    }
+
+    private void addCheckpoint(long style) {
+        if (checkpointCount == checkpoints.length) checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+        checkpoints[checkpointCount++] = style;
+    }
+
+    /** Removes all highlighters and folds from the given block to the end of the document. */
+    private void release(int fromBlock) {
+        Document doc = editor.getDocument();
+        int fromLine = Math.min(fromBlock * interval, AnsiHighlightSession.lineCount(doc) - 1);
+        int start = doc.getLineStartOffset(fromLine);
+        AnsiLogFileOpenListener.removeAnsiHighlighters(editor.getMarkupModel(), start, doc.getTextLength());
+        AnsiLogFileOpenListener.updateFolds(editor, start, doc.getTextLength(), new IntArrayList());
+        materialized.clear(fromBlock, Math.max(fromBlock, materialized.length()));
+    }
+
+    private void releaseBlock(int block) {
+        Document doc = editor.getDocument();
+        int lineCount = AnsiHighlightSession.lineCount(doc);
+        int firstLine = block * interval;
+        materialized.clear(block);
+        if (firstLine >= lineCount) return;
+        int lastLine = Math.min(lineCount, firstLine + interval) - 1;
+        int start = doc.getLineStartOffset(firstLine);
+        int end = doc.getLineEndOffset(lastLine);
+        AnsiLogFileOpenListener.removeAnsiHighlighters(editor.getMarkupModel(), start, end);
+        AnsiLogFileOpenListener.updateFolds(editor, start, end, new IntArrayList());
+    }
+
+    @Override
+    public void dispose() {
+        if (!editor.isDisposed()) {
+            editor.putUserData(KEY, null);
+        }
+    }
+}
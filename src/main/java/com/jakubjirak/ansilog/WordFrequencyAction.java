@@ -15,8 +15,7 @@ public class WordFrequencyAction extends AnAction {
         Editor editor = e.getData(PlatformDataKeys.EDITOR);
         if (editor == null) return;
         
-        String text = editor.getDocument().getText();
-        String cleanText = text.replaceAll("(?:\\u001B|\\\\u001B)\\[[0-9;]*m", "");
+        String cleanText = AnsiStripper.strip(editor.getDocument().getImmutableCharSequence());
         
         Map<String, Integer> wordFreq = new HashMap<>();
         String[] words = cleanText.split("[\\s\\p{P}]+");